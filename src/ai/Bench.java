@@ -0,0 +1,171 @@
+package ai;
+
+import main.Board;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Timing harness for the engine hot paths and a fixed-depth search bench.
+ * <p>
+ * Each micro-benchmark warms up, then runs its operation over the bench positions until a time budget is spent,
+ * and prints nanoseconds per call. The bench searches every position to a fixed depth on one thread with fresh
+ * tables, so its total node count is a signature that only changes when the search or evaluation does; any change
+ * that is meant to be a pure speedup must leave it alone. Nodes per second is the speed figure to compare.
+ * <p>
+ * The allocation check searches the bench positions once to warm up, then again while counting the bytes the
+ * thread allocates. The search preallocates everything it uses per ply, so anything above zero per node is a
+ * regression (and garbage collector pauses the UI will show); the check exits with status 1 when it finds some.
+ * <p>
+ * Usage: {@code java ai.Bench [depth]} runs both, {@code java ai.Bench search [depth]} only the bench and
+ * {@code java ai.Bench alloc [depth]} only the allocation check.
+ */
+public final class Bench {
+    private static final int DEFAULT_DEPTH = 8;
+    private static final long WARMUP_NANOS = 500_000_000L;
+    private static final long MEASURE_NANOS = 1_000_000_000L;
+
+    private static final String[] POSITIONS = {
+            "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+            "r1bqkb1r/pppp1ppp/2n2n2/4p3/2B1P3/5N2/PPPP1PPP/RNBQK2R w KQkq - 4 4",
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+            "r2q1rk1/pp2bppp/2n1pn2/3p4/2PP4/2N1PN2/PP2BPPP/R2Q1RK1 w - - 0 9",
+            "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+            "6k1/5pp1/7p/3r4/8/7P/5PP1/2R3K1 w - - 0 1",
+            "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+            "8/8/4k3/8/2p5/8/1P2K3/8 w - - 0 1",
+    };
+
+    // Results feed this so the JIT cannot drop the work being timed
+    private static long sink;
+
+    private Bench() {
+    }
+
+    public static void main(String[] args) {
+        String command = args.length > 0 && !Character.isDigit(args[0].charAt(0)) ? args[0] : "all";
+        int depthArg = command.equals("all") ? 0 : 1;
+        int depth = args.length > depthArg ? Integer.parseInt(args[depthArg]) : DEFAULT_DEPTH;
+        switch (command) {
+            case "search" -> runSearchBench(depth);
+            case "alloc" -> {
+                if (!checkSearchAllocation(depth)) System.exit(1);
+            }
+            default -> {
+                runMicroBenchmarks();
+                runSearchBench(depth);
+            }
+        }
+    }
+
+    public static void runMicroBenchmarks() {
+        Position[] positions = new Position[POSITIONS.length];
+        for (int i = 0; i < positions.length; i++) positions[i] = Position.fromFen(POSITIONS[i]);
+        MoveList moves = new MoveList();
+        PawnHashTable pawns = new PawnHashTable(PawnHashTable.DEFAULT_ENTRIES);
+
+        measure("MoveGenerator.generateLegalMoves", positions, position -> {
+            moves.clear();
+            MoveGenerator.generateLegalMoves(position, moves);
+            return moves.size();
+        });
+        measure("Position.isInCheck", positions, position -> position.isInCheck(position.sideToMove()) ? 1 : 0);
+        measure("Zobrist.computeHash(Position)", positions, Zobrist::computeHash);
+        measure("ChessAI.evaluateBoard", positions, position -> ChessAI.evaluateBoard(position, pawns));
+        measure("ChessAI.evaluateBoard (no pawn hash)", positions, position -> ChessAI.evaluateBoard(position, null));
+
+        // The UI board only starts from the initial position
+        Board board = new Board();
+        Position[] initial = {board.getPosition()};
+        measure("Board.getAllLegalMoves", initial, position -> board.getAllLegalMoves(true).size());
+        measure("Board.isKingInCheck", initial, position -> board.isKingInCheck(true) ? 1 : 0);
+        measure("Zobrist.computeHash(Piece[][])", initial, position -> Zobrist.computeHash(board.getBoard(), true));
+
+        // Includes the root setup and move conversion. Each call gets a new AI so that it starts from an empty table
+        int searches = 5;
+        long elapsed = 0;
+        for (int i = 0; i < searches; i++) {
+            ChessAI ai = new ChessAI(false, TranspositionTable.DEFAULT_SIZE_MB, 1);
+            long start = System.nanoTime();
+            sink += ai.getBestMove(board, 6).toRow;
+            elapsed += System.nanoTime() - start;
+            ai.shutdown();
+        }
+        System.out.printf("%-40s %,14d ns/op%n", "ChessAI.getBestMove (depth 6)", elapsed / searches);
+    }
+
+    /**
+     * Searches every bench position to the depth and prints the node signature and speed.
+     * Returns the total node count.
+     */
+    public static long runSearchBench(int depth) {
+        long nodes = 0, nanos = 0;
+        for (String fen : POSITIONS) {
+            Position position = Position.fromFen(fen);
+            SearchWorker worker = new SearchWorker(0, position, new TranspositionTable(TranspositionTable.DEFAULT_SIZE_MB),
+                    new AtomicBoolean(), SearchLimits.depth(depth), new SearchOptions(), null, new SearchStats());
+            long start = System.nanoTime();
+            worker.run();
+            nanos += System.nanoTime() - start;
+            nodes += worker.nodes;
+            System.out.printf("%-72s %10d nodes  %s%n", fen, worker.nodes, MoveGenerator.toString(worker.bestMove));
+        }
+        long millis = Math.max(1, nanos / 1_000_000);
+        System.out.printf("Bench depth %d: signature %d, %dms, %d nps%n", depth, nodes, millis, nodes * 1000 / millis);
+        return nodes;
+    }
+
+    /**
+     * Searches the bench positions while the JVM counts this thread's allocations, with the workers and their
+     * tables built beforehand. Prints bytes per node and returns whether the search allocated nothing.
+     */
+    public static boolean checkSearchAllocation(int depth) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        threads.setThreadAllocatedMemoryEnabled(true);
+        for (int round = 0; round < 2; round++) { // The first round warms up the JIT and is not counted
+            SearchWorker[] workers = new SearchWorker[POSITIONS.length];
+            for (int i = 0; i < workers.length; i++) {
+                workers[i] = new SearchWorker(0, Position.fromFen(POSITIONS[i]), new TranspositionTable(TranspositionTable.DEFAULT_SIZE_MB),
+                        new AtomicBoolean(), SearchLimits.depth(depth), new SearchOptions(), null, new SearchStats());
+            }
+            long nodes = 0;
+            long before = threads.getCurrentThreadAllocatedBytes();
+            for (SearchWorker worker : workers) {
+                worker.run();
+                nodes += worker.nodes;
+            }
+            long bytes = threads.getCurrentThreadAllocatedBytes() - before;
+            if (round == 1) {
+                System.out.printf("Search allocation at depth %d: %d bytes over %d nodes (%.3f bytes/node)%n",
+                        depth, bytes, nodes, (double) bytes / nodes);
+                return bytes == 0;
+            }
+        }
+        return false;
+    }
+
+    private static void measure(String name, Position[] positions, Operation operation) {
+        run(positions, operation, WARMUP_NANOS);
+        long start = System.nanoTime();
+        long calls = run(positions, operation, MEASURE_NANOS);
+        System.out.printf("%-40s %,14.1f ns/op%n", name, (double) (System.nanoTime() - start) / calls);
+    }
+
+    // Calls the operation over the positions until the budget is spent; returns the number of calls
+    private static long run(Position[] positions, Operation operation, long budgetNanos) {
+        long calls = 0;
+        long deadline = System.nanoTime() + budgetNanos;
+        while (System.nanoTime() < deadline) {
+            for (int batch = 0; batch < 64; batch++) {
+                for (Position position : positions) sink += operation.apply(position);
+                calls += positions.length;
+            }
+        }
+        return calls;
+    }
+
+    @FunctionalInterface
+    private interface Operation {
+        long apply(Position position);
+    }
+}
@@ -0,0 +1,92 @@
+package ai;
+
+/**
+ * Attack tables and sliding-attack helpers for the bitboard engine.
+ * Squares are indexed row * 8 + col, matching Board (row 0 is black's back rank).
+ */
+public final class Bitboards {
+    public static final long[] KNIGHT_ATTACKS = new long[64];
+    public static final long[] KING_ATTACKS = new long[64];
+    // [color][square] squares attacked by a pawn of that color standing on the square
+    public static final long[][] PAWN_ATTACKS = new long[2][64];
+    // [direction][square] the squares from the square to the edge of the board, the square itself excluded
+    public static final long[][] RAYS = new long[8][64];
+    // [from][to] the squares strictly between two squares on a common rank, file or diagonal, otherwise empty
+    public static final long[][] BETWEEN = new long[64][64];
+    // [from][to] the whole rank, file or diagonal through two squares, edge to edge, otherwise empty
+    public static final long[][] LINE = new long[64][64];
+
+    private static final int[][] KNIGHT_STEPS = {{-2, -1}, {-2, 1}, {-1, -2}, {-1, 2}, {1, -2}, {1, 2}, {2, -1}, {2, 1}};
+    private static final int[][] KING_STEPS = {{-1, -1}, {-1, 0}, {-1, 1}, {0, -1}, {0, 1}, {1, -1}, {1, 0}, {1, 1}};
+    // Row and column steps of the ray directions: the four straight ones first, then the diagonals
+    private static final int[][] DIRECTION_STEPS = {{-1, 0}, {1, 0}, {0, -1}, {0, 1}, {-1, -1}, {-1, 1}, {1, -1}, {1, 1}};
+    private static final int[] OPPOSITE = {1, 0, 3, 2, 7, 6, 5, 4};
+
+    static {
+        for (int sq = 0; sq < 64; sq++) {
+            int row = sq >> 3, col = sq & 7;
+            KNIGHT_ATTACKS[sq] = leaperAttacks(row, col, KNIGHT_STEPS);
+            KING_ATTACKS[sq] = leaperAttacks(row, col, KING_STEPS);
+            PAWN_ATTACKS[Position.WHITE][sq] = leaperAttacks(row, col, new int[][]{{-1, -1}, {-1, 1}});
+            PAWN_ATTACKS[Position.BLACK][sq] = leaperAttacks(row, col, new int[][]{{1, -1}, {1, 1}});
+            for (int dir = 0; dir < 8; dir++) {
+                int[] d = DIRECTION_STEPS[dir];
+                long ray = 0L;
+                for (int r = row + d[0], c = col + d[1]; r >= 0 && r < 8 && c >= 0 && c < 8; r += d[0], c += d[1]) {
+                    BETWEEN[sq][r * 8 + c] = ray;
+                    ray |= 1L << (r * 8 + c);
+                }
+                RAYS[dir][sq] = ray;
+            }
+        }
+        for (int sq = 0; sq < 64; sq++) {
+            for (int dir = 0; dir < 8; dir++) {
+                long line = RAYS[dir][sq] | RAYS[OPPOSITE[dir]][sq] | (1L << sq);
+                for (long b = RAYS[dir][sq]; b != 0; b &= b - 1) LINE[sq][Long.numberOfTrailingZeros(b)] = line;
+            }
+        }
+    }
+
+    private Bitboards() {
+    }
+
+    public static long bit(int sq) {
+        return 1L << sq;
+    }
+
+    public static int square(int row, int col) {
+        return row * 8 + col;
+    }
+
+    public static long rookAttacks(int sq, long occupied) {
+        return rayAttacks(0, sq, occupied) | rayAttacks(1, sq, occupied) | rayAttacks(2, sq, occupied) | rayAttacks(3, sq, occupied);
+    }
+
+    public static long bishopAttacks(int sq, long occupied) {
+        return rayAttacks(4, sq, occupied) | rayAttacks(5, sq, occupied) | rayAttacks(6, sq, occupied) | rayAttacks(7, sq, occupied);
+    }
+
+    public static long queenAttacks(int sq, long occupied) {
+        return rookAttacks(sq, occupied) | bishopAttacks(sq, occupied);
+    }
+
+    // The ray up to and including its first blocker: the part of the ray beyond the blocker is the blocker's own ray
+    private static long rayAttacks(int dir, int sq, long occupied) {
+        long ray = RAYS[dir][sq];
+        long blockers = ray & occupied;
+        if (blockers == 0) return ray;
+        // Rays running towards h1 (square 63) meet their nearest blocker at the lowest bit, the others at the highest
+        boolean increasing = DIRECTION_STEPS[dir][0] * 8 + DIRECTION_STEPS[dir][1] > 0;
+        int blocker = increasing ? Long.numberOfTrailingZeros(blockers) : 63 - Long.numberOfLeadingZeros(blockers);
+        return ray ^ RAYS[dir][blocker];
+    }
+
+    private static long leaperAttacks(int row, int col, int[][] steps) {
+        long attacks = 0L;
+        for (int[] s : steps) {
+            int r = row + s[0], c = col + s[1];
+            if (r >= 0 && r < 8 && c >= 0 && c < 8) attacks |= 1L << (r * 8 + c);
+        }
+        return attacks;
+    }
+}
@@ -2,145 +2,415 @@ package ai;
 
 import chessPieces.*;
 import main.Board;
-import utilz.MoveSnapshot;
 
-import java.util.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static ai.Position.*;
 
 public class ChessAI {
-    private final boolean isWhiteAI;
-    private final TranspositionTable transpositionTable = new TranspositionTable();
+    static final int MATE_SCORE = 1_000_000; // Mate at the root; a mate found ply plies deeper scores MATE_SCORE - ply
+    static final int MATE_BOUND = MATE_SCORE - SearchWorker.MAX_PLY; // Any score at least this far from zero is a mate
+    // Mates and the tablebase wins below them both count plies from the root. Scores beyond this bound are
+    // stored in the transposition table counted from the stored position instead
+    static final int WIN_BOUND = MATE_SCORE / 4;
+    // Nominal values in centipawns for move ordering and pruning margins, indexed by Position piece type
+    static final int[] PIECE_VALUES = {100, 320, 330, 500, 900, 20000};
+    public static final int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors();
 
-    // Piece-Square Tables (standard values for stronger eval)
-    private static final int[][] PAWN_TABLE = {
-            {0, 0, 0, 0, 0, 0, 0, 0},
-            {5, 5, 5, 5, 5, 5, 5, 5},
-            {1, 1, 2, 3, 3, 2, 1, 1},
-            {0, 0, 0, 2, 2, 0, 0, 0},
-            {0, 0, 0, 2, 2, 0, 0, 0},
-            {1, -1,-2, 0, 0,-2,-1, 1},
-            {1, 2, 2,-2,-2, 2, 2, 1},
-            {0, 0, 0, 0, 0, 0, 0, 0}
-    };
+    private final boolean isWhiteAI;
+    private final TranspositionTable transpositionTable;
+    private final SearchOptions searchOptions = new SearchOptions();
+    private int threads = DEFAULT_THREADS;
+    private ExecutorService helperPool; // Lazy SMP helper threads, created on first multi-threaded search
+    // Worker sets, one worker per thread, kept between searches. A ponder search that is still unwinding holds
+    // its own set, so a second set is only built while two searches overlap
+    private final Deque<SearchWorker[]> idleWorkers = new ArrayDeque<>();
+    private volatile OpeningBook openingBook;
+    private volatile Tablebase tablebase;
+    private volatile SearchStats lastSearchStats;
+    private boolean ponderEnabled;
+    private Ponder ponder; // The running or finished ponder search, if any
 
+    static {
+        // The first Flight Recorder event instance initializes the event class, which takes around half a
+        // second. Done here so that it never comes out of a search's time budget
+        new SearchEvent();
+    }
 
     public ChessAI(boolean isWhiteAI) {
+        this(isWhiteAI, TranspositionTable.DEFAULT_SIZE_MB);
+    }
+
+    public ChessAI(boolean isWhiteAI, int hashSizeMb) {
+        this(isWhiteAI, hashSizeMb, DEFAULT_THREADS);
+    }
+
+    public ChessAI(boolean isWhiteAI, int hashSizeMb, int threads) {
+        if (threads < 1) throw new IllegalArgumentException("Thread count must be at least 1: " + threads);
         this.isWhiteAI = isWhiteAI;
+        this.transpositionTable = new TranspositionTable(hashSizeMb);
+        this.threads = threads;
+        // Built now rather than inside the first search's time budget
+        idleWorkers.push(newWorkers());
+    }
+
+    /**
+     * Sets the number of search threads. With more than one, the extra threads search the same root
+     * as Lazy SMP helpers on private position copies, sharing the transposition table.
+     */
+    public synchronized void setThreads(int threads) {
+        if (threads < 1) throw new IllegalArgumentException("Thread count must be at least 1: " + threads);
+        if (threads == this.threads) return;
+        shutdown();
+        this.threads = threads;
+        idleWorkers.clear();
+        idleWorkers.push(newWorkers());
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * The pruning switches used by subsequent searches. Changes take effect at the next getBestMove call.
+     */
+    public SearchOptions getSearchOptions() {
+        return searchOptions;
+    }
+
+    /**
+     * Sets the book consulted before searching, or null for none.
+     */
+    public void setOpeningBook(OpeningBook openingBook) {
+        this.openingBook = openingBook;
+    }
+
+    public OpeningBook getOpeningBook() {
+        return openingBook;
+    }
+
+    /**
+     * Sets the endgame tables used at the root and inside the search, or null for none.
+     */
+    public void setTablebase(Tablebase tablebase) {
+        this.tablebase = tablebase;
+    }
+
+    public Tablebase getTablebase() {
+        return tablebase;
+    }
+
+    /**
+     * Statistics of the most recently finished search, pondering included, or null before the first one.
+     */
+    public SearchStats getLastSearchStats() {
+        return lastSearchStats;
+    }
+
+    /**
+     * Enables searching on the opponent's time. Off by default; turning it off cancels a running ponder search.
+     */
+    public synchronized void setPonder(boolean enabled) {
+        this.ponderEnabled = enabled;
+        if (!enabled) stopPondering();
+    }
+
+    public synchronized boolean isPonderEnabled() {
+        return ponderEnabled;
+    }
+
+    public synchronized void shutdown() {
+        stopPondering();
+        if (helperPool != null) {
+            helperPool.shutdownNow();
+            helperPool = null;
+        }
     }
 
     public Move getBestMove(Board board, int maxDepth) {
-        long startTime = System.currentTimeMillis();
-        Move bestMove = null;
-        int lastDepth = 0;
+        return getBestMove(board, SearchLimits.depth(maxDepth));
+    }
 
-        for (int depth = 1; depth <= maxDepth; depth++) {
-            Result result = minimax(board, depth, Integer.MIN_VALUE, Integer.MAX_VALUE, isWhiteAI);
-            if (result.move != null) bestMove = result.move;
+    /**
+     * Searches a bitboard copy of the board's position and maps the result back to the board's pieces.
+     * With timed limits the search stops at the hard deadline and returns the best move of the last completed depth.
+     * Book positions are answered from the opening book, endgames from the tablebase, and after a ponder hit the ponder search's result
+     * is used instead of searching again.
+     */
+    public Move getBestMove(Board board, SearchLimits limits) {
+        long startTime = System.currentTimeMillis();
+        Position position = board.getPosition().copy();
+        position.setSideToMove(isWhiteAI ? WHITE : BLACK);
 
-            if (board.getAllLegalMoves(isWhiteAI).isEmpty()) {
-                System.out.println("No legal moves available for AI at depth " + depth);
-                break;
+        MoveList rootMoves = new MoveList();
+        MoveGenerator.generateLegalMoves(position, rootMoves);
+        Ponder hit = takePonderHit(position);
+        if (rootMoves.isEmpty()) {
+            System.out.println("No legal moves available for AI");
+            return null;
+        }
+        OpeningBook book = openingBook;
+        if (book != null) {
+            int bookMove = book.probe(position);
+            if (bookMove != MoveGenerator.NO_MOVE) {
+                System.out.printf("AI played book move in %dms%n", System.currentTimeMillis() - startTime);
+                return toBoardMove(board, bookMove);
+            }
+        }
+        Tablebase tables = tablebase;
+        if (tables != null) {
+            int tableMove = tables.bestMove(position);
+            if (tableMove != MoveGenerator.NO_MOVE) {
+                System.out.printf("AI played tablebase move in %dms%n", System.currentTimeMillis() - startTime);
+                return toBoardMove(board, tableMove);
+            }
+        }
+        if (hit != null) {
+            try {
+                hit.done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            int move = hit.bestMove;
+            if (move != MoveGenerator.NO_MOVE && contains(rootMoves, move)) {
+                System.out.printf("AI ponder hit: move in %dms at final depth %d (%d main nodes)%n",
+                        System.currentTimeMillis() - startTime, hit.completedDepth, hit.nodes);
+                System.out.println("AI search stats: " + hit.stats);
+                return toBoardMove(board, move);
             }
-            lastDepth = depth;
         }
+        if (rootMoves.size() == 1 && limits.isTimed()) {
+            return toBoardMove(board, rootMoves.get(0)); // Forced reply, save the clock
+        }
+
+        transpositionTable.newSearch();
+        AtomicBoolean stop = new AtomicBoolean();
+        SearchWorker[] workers = acquireWorkers();
+        try {
+            SearchWorker main = workers[0];
+            main.reset(position, stop, limits, searchOptions.copy(), tablebase, new SearchStats());
+            long nodes = search(position, workers, stop, false);
 
-        System.out.printf("AI computed move in %dms at final depth %d%n",
-                System.currentTimeMillis() - startTime, lastDepth);
-        return bestMove;
+            int bestMove = main.bestMove != MoveGenerator.NO_MOVE ? main.bestMove : rootMoves.get(0);
+            long elapsed = Math.max(1, System.currentTimeMillis() - startTime);
+            System.out.printf("AI computed move in %dms at final depth %d (%d threads, %d nodes, %d main, %d knps, pawn hash %d%% hits)%n",
+                    elapsed, main.completedDepth, workers.length, nodes, main.nodes, nodes / elapsed, main.pawnTable.hitRate());
+            System.out.println("AI search stats: " + main.stats());
+            return toBoardMove(board, bestMove);
+        } finally {
+            releaseWorkers(workers);
+        }
     }
 
-    private Result minimax(Board board, int depth, int alpha, int beta, boolean maximizingPlayer) {
-        long hash = Zobrist.computeHash(board.getBoard(), maximizingPlayer);
-        TranspositionTable.TTEntry ttEntry = transpositionTable.get(hash);
+    /**
+     * Runs the main worker, already reset for the root, on the calling thread and Lazy SMP helpers on the
+     * pool until the main worker finishes, then stops and joins the helpers. Returns the total node count.
+     * Each search is recorded as a Flight Recorder event and its statistics are kept for getLastSearchStats().
+     */
+    private long search(Position position, SearchWorker[] workers, AtomicBoolean stop, boolean ponder) {
+        SearchEvent event = new SearchEvent();
+        event.begin();
+        SearchWorker main = workers[0];
+        List<Future<?>> running = new ArrayList<>();
+        ExecutorService pool = workers.length > 1 ? helperPool() : null;
+        for (int id = 1; id < workers.length; id++) {
+            SearchWorker helper = workers[id];
+            helper.reset(position, stop, SearchLimits.depth(SearchLimits.MAX_DEPTH), main.options(), main.tablebase(), main.stats());
+            running.add(pool.submit(helper));
+        }
 
-        if (ttEntry != null && ttEntry.depth >= depth) {
-            switch (ttEntry.flag) {
-                case 0: return new Result(ttEntry.score, ttEntry.bestMove);
-                case -1: if (ttEntry.score <= alpha) return new Result(alpha, ttEntry.bestMove); break;
-                case 1: if (ttEntry.score >= beta) return new Result(beta, ttEntry.bestMove); break;
+        main.run();
+        stop.set(true);
+        for (Future<?> future : running) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                e.printStackTrace();
             }
         }
 
-        if (depth == 0 || board.isGameEnded()) {
-            return new Result(evaluateBoard(board), null);
-        }
+        long nodes = 0;
+        for (SearchWorker worker : workers) nodes += worker.nodes;
 
-        List<Move> moves = board.getAllLegalMoves(maximizingPlayer);
-        moves.sort(Comparator.comparingInt(m -> -scoreMove(m, board))); // Improved move ordering
+        lastSearchStats = main.stats();
+        event.end();
+        if (event.shouldCommit()) {
+            event.ponder = ponder;
+            event.threads = workers.length;
+            event.bestMove = MoveGenerator.toString(main.bestMove);
+            event.score = main.bestScore;
+            event.fill(main.stats());
+            event.commit();
+        }
+        return nodes;
+    }
 
-        Move bestMove = null;
-        int bestScore = maximizingPlayer ? Integer.MIN_VALUE : Integer.MAX_VALUE;
-        int alphaOrig = alpha;
+    /**
+     * Starts searching, on the executor, the position after the opponent's expected reply: the best move the
+     * transposition table holds for the given position, where the opponent is to move. The search runs
+     * without limits until ponderHit() or another search resolves it. Does nothing if pondering is off
+     * or no reply is known.
+     */
+    public synchronized void startPondering(Position position, Executor executor) {
+        stopPondering();
+        if (!ponderEnabled) return;
 
-        for (Move move : moves) {
-            MoveSnapshot snapshot = board.simulateMove(move.piece, move.toRow, move.toCol);
-            int eval = minimax(board, depth - 1, alpha, beta, !maximizingPlayer).score;
-            board.undoMove(snapshot);
+        Position ponderPosition = position.copy();
+        ponderPosition.setSideToMove(isWhiteAI ? BLACK : WHITE);
+        long entry = transpositionTable.probe(ponderPosition.hash());
+        int reply = entry != 0 ? TranspositionTable.move(entry) : MoveGenerator.NO_MOVE;
+        MoveList moves = new MoveList();
+        MoveGenerator.generateLegalMoves(ponderPosition, moves);
+        if (reply == MoveGenerator.NO_MOVE || !contains(moves, reply)) return;
+        ponderPosition.makeMove(reply);
 
-            if (maximizingPlayer) {
-                if (eval > bestScore) {
-                    bestScore = eval;
-                    bestMove = move;
-                }
-                alpha = Math.max(alpha, bestScore);
-            } else {
-                if (eval < bestScore) {
-                    bestScore = eval;
-                    bestMove = move;
-                }
-                beta = Math.min(beta, bestScore);
+        transpositionTable.newSearch();
+        AtomicBoolean stop = new AtomicBoolean();
+        SearchWorker[] workers = acquireWorkers();
+        workers[0].reset(ponderPosition, stop, SearchLimits.depth(SearchLimits.MAX_DEPTH), searchOptions.copy(), tablebase,
+                new SearchStats());
+        Ponder started = new Ponder(ponderPosition, workers, stop);
+        ponder = started;
+        executor.execute(() -> {
+            try {
+                search(started.position, workers, started.stop, true);
+                started.keepResult();
+            } finally {
+                releaseWorkers(workers);
+                started.done.countDown();
             }
-            if (beta <= alpha) break;
+        });
+    }
+
+    /**
+     * Called when the opponent has moved. If the position is the one being pondered, the running search
+     * continues under the limits, with the time already spent pondering counted against them; the next
+     * getBestMove() returns its result. Otherwise the ponder search is cancelled. Returns whether it was a hit.
+     */
+    public synchronized boolean ponderHit(Position position, SearchLimits limits) {
+        if (ponder == null) return false;
+        if (ponder.hash != position.hash()) {
+            stopPondering();
+            return false;
         }
+        ponder.hit = true;
+        SearchLimits continued = limits.countedFrom(ponder.startTime);
+        ponder.main.setLimits(continued);
+        // Enough has been searched already: stop now and answer from the last completed depth
+        int completed = ponder.main.completedDepth;
+        if (completed > 0 && (completed >= continued.maxDepth || !continued.canStartIteration(System.nanoTime()))) {
+            ponder.stop.set(true);
+        }
+        return true;
+    }
 
-        // Store TT entry
-        int flag = 0;
-        if (bestScore <= alphaOrig) flag = 1; // Upper bound
-        else if (bestScore >= beta) flag = -1; // Lower bound
+    public synchronized void stopPondering() {
+        if (ponder != null) {
+            ponder.stop.set(true);
+            ponder = null;
+        }
+    }
 
-        transpositionTable.put(hash, new TranspositionTable.TTEntry(depth, bestScore, flag, bestMove));
-        return new Result(bestScore, bestMove);
+    // Hands over a ponder search that hit on this position, cancelling any other
+    private synchronized Ponder takePonderHit(Position position) {
+        Ponder hit = ponder != null && ponder.hit && ponder.hash == position.hash() ? ponder : null;
+        if (hit != null) ponder = null;
+        else stopPondering();
+        return hit;
     }
 
-    private int evaluateBoard(Board board) {
-        int score = 0;
-        for (int row = 0; row < 8; row++) {
-            for (int col = 0; col < 8; col++) {
-                Piece p = board.getPieceAt(row, col);
-                if (p != null) {
-                    int value = p.getValue();
-                    int bonus = getPositionalBonus(p, row, col);
-                    score += (p.isWhite() ? value + bonus : -value - bonus);
-                }
-            }
+    private static boolean contains(MoveList moves, int move) {
+        for (int i = 0; i < moves.size(); i++) {
+            if (moves.get(i) == move) return true;
         }
-        return score;
+        return false;
     }
 
-    private int getPositionalBonus(Piece piece, int row, int col) {
-        if (piece instanceof Pawn)    return piece.isWhite() ? PAWN_TABLE[row][col]   : PAWN_TABLE[7 - row][col];
-        return 0;
+    private synchronized SearchWorker[] acquireWorkers() {
+        SearchWorker[] workers = idleWorkers.poll();
+        return workers != null ? workers : newWorkers();
     }
 
-    // Improved move ordering: prioritize captures, checks, promotions, center control
-    private static int scoreMove(Move move, Board board) {
-        int score = 0;
-        if (move.toRow < 0 || move.toRow >= 8 || move.toCol < 0 || move.toCol >= 8)
-            return Integer.MIN_VALUE;
+    // Sets built for an earlier thread count are dropped
+    private synchronized void releaseWorkers(SearchWorker[] workers) {
+        if (workers.length == threads) idleWorkers.push(workers);
+    }
 
-        if (move.capturedPiece != null) {
-            score += 10 * move.capturedPiece.getValue() - move.piece.getValue();
+    private SearchWorker[] newWorkers() {
+        SearchWorker[] workers = new SearchWorker[threads];
+        for (int id = 0; id < threads; id++) {
+            // One pawn table per thread, living as long as the set so that structures carry over between moves
+            workers[id] = new SearchWorker(id, transpositionTable, new PawnHashTable(PawnHashTable.DEFAULT_ENTRIES));
         }
-        if ((move.toRow == 3 || move.toRow == 4) && (move.toCol == 3 || move.toCol == 4)) score += 20;
-        if (move.piece instanceof Pawn && (move.toRow == 0 || move.toRow == 7)) score += 800;
+        return workers;
+    }
 
-        try {
-            MoveSnapshot snapshot = board.simulateMove(move.piece, move.toRow, move.toCol);
-            if (board.isKingInCheck(!move.piece.isWhite())) score += 200;
-            board.undoMove(snapshot);
-        } catch (ArrayIndexOutOfBoundsException e) {
-            return Integer.MIN_VALUE;
+    private synchronized ExecutorService helperPool() {
+        if (helperPool == null) {
+            helperPool = Executors.newFixedThreadPool(threads - 1, runnable -> {
+                Thread thread = new Thread(runnable, "chess-ai-helper");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return helperPool;
+    }
+
+    static int evaluateBoard(Position position, PawnHashTable pawns) {
+        return Evaluation.evaluate(position, pawns);
+    }
+
+    private static Move toBoardMove(Board board, int move) {
+        int from = MoveGenerator.from(move), to = MoveGenerator.to(move);
+        Piece piece = board.getPieceAt(from >> 3, from & 7);
+        if (piece == null) return null;
+        int capturedSq = MoveGenerator.flag(move) != MoveGenerator.EN_PASSANT ? to : (piece.isWhite() ? to + 8 : to - 8);
+        Piece captured = board.getPieceAt(capturedSq >> 3, capturedSq & 7);
+        int promotion = MoveGenerator.flag(move) == MoveGenerator.PROMOTION
+                ? toConstantsType(MoveGenerator.promotion(move)) : -1;
+        return new Move(piece, to >> 3, to & 7, captured, promotion);
+    }
+
+    private static final class Ponder {
+        final Position position; // After the expected reply; owned by the search once started
+        final SearchWorker main;
+        final AtomicBoolean stop;
+        final long hash;
+        final long startTime = System.nanoTime();
+        final CountDownLatch done = new CountDownLatch(1);
+        boolean hit;
+
+        // The main worker's result, copied before the workers go back to the idle sets; read after done
+        int bestMove = MoveGenerator.NO_MOVE;
+        int completedDepth;
+        long nodes;
+        SearchStats stats;
+
+        Ponder(Position position, SearchWorker[] workers, AtomicBoolean stop) {
+            this.position = position;
+            this.main = workers[0];
+            this.stop = stop;
+            this.hash = position.hash();
+        }
+
+        void keepResult() {
+            bestMove = main.bestMove;
+            completedDepth = main.completedDepth;
+            nodes = main.nodes;
+            stats = main.stats();
         }
-        return score;
     }
 
     public static class Move {
@@ -148,32 +418,24 @@ public class ChessAI {
         public final int fromRow, fromCol;
         public final int toRow, toCol;
         public final Piece capturedPiece;
+        public final int promotion; // Constants type to promote to, or -1
 
         public Move(Piece piece, int toRow, int toCol) {
-            this.piece = piece;
-            this.fromRow = piece.getRow();
-            this.fromCol = piece.getCol();
-            this.toRow = toRow;
-            this.toCol = toCol;
-            this.capturedPiece = null; // Optionally, Board can provide this
+            this(piece, toRow, toCol, null, -1);
         }
 
         public Move(Piece piece, int toRow, int toCol, Piece capturedPiece) {
+            this(piece, toRow, toCol, capturedPiece, -1);
+        }
+
+        public Move(Piece piece, int toRow, int toCol, Piece capturedPiece, int promotion) {
             this.piece = piece;
             this.fromRow = piece.getRow();
             this.fromCol = piece.getCol();
             this.toRow = toRow;
             this.toCol = toCol;
             this.capturedPiece = capturedPiece;
+            this.promotion = promotion;
         }
     }
-
-    private static class Result {
-        final int score;
-        final Move move;
-        Result(int score, Move move) {
-            this.score = score;
-            this.move = move;
-        }
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,260 @@
+package ai;
+
+import static ai.Position.*;
+
+/**
+ * Tapered material and piece-square evaluation, in centipawns from white's point of view.
+ * Every piece has a middlegame and an endgame value for its square; Position keeps both sums and the
+ * game phase up to date as pieces are put, removed and moved, so evaluating a leaf is one blend of two numbers.
+ */
+public final class Evaluation {
+    // Phase drops from MAX_PHASE (all minor and major pieces on) towards 0 (kings and pawns only)
+    public static final int MAX_PHASE = 24;
+    static final int[] PHASE_WEIGHTS = {0, 1, 1, 2, 4, 0};
+
+    // Pawn structure, scored per pawn; passed pawn bonuses are indexed by rank counted from the pawn's own side
+    private static final int DOUBLED_MG = -10, DOUBLED_EG = -20;
+    private static final int ISOLATED_MG = -10, ISOLATED_EG = -15;
+    private static final int[] PASSED_MG = {0, 5, 10, 15, 25, 40, 60, 0};
+    private static final int[] PASSED_EG = {0, 10, 15, 25, 45, 75, 120, 0};
+    // Endgame weight of king distances to a passed pawn's stop square, scaled by how far the pawn has come
+    private static final int PASSED_ENEMY_KING = 5, PASSED_OWN_KING = 2;
+
+    private static final int[] MG_VALUES = {100, 320, 330, 500, 900, 0};
+    private static final int[] EG_VALUES = {120, 290, 320, 530, 950, 0};
+
+    // Tables are written from white's side with rank 8 first, so they read like the board; black mirrors with sq ^ 56
+    private static final int[] PAWN_MG = {
+            0, 0, 0, 0, 0, 0, 0, 0,
+            50, 50, 50, 50, 50, 50, 50, 50,
+            10, 10, 20, 30, 30, 20, 10, 10,
+            5, 5, 10, 25, 25, 10, 5, 5,
+            0, 0, 0, 20, 20, 0, 0, 0,
+            5, -5, -10, 0, 0, -10, -5, 5,
+            5, 10, 10, -20, -20, 10, 10, 5,
+            0, 0, 0, 0, 0, 0, 0, 0
+    };
+    private static final int[] PAWN_EG = {
+            0, 0, 0, 0, 0, 0, 0, 0,
+            90, 90, 90, 90, 90, 90, 90, 90,
+            55, 55, 55, 55, 55, 55, 55, 55,
+            30, 30, 30, 30, 30, 30, 30, 30,
+            15, 15, 15, 15, 15, 15, 15, 15,
+            5, 5, 5, 5, 5, 5, 5, 5,
+            0, 0, 0, 0, 0, 0, 0, 0,
+            0, 0, 0, 0, 0, 0, 0, 0
+    };
+    private static final int[] KNIGHT_TABLE = {
+            -50, -40, -30, -30, -30, -30, -40, -50,
+            -40, -20, 0, 0, 0, 0, -20, -40,
+            -30, 0, 10, 15, 15, 10, 0, -30,
+            -30, 5, 15, 20, 20, 15, 5, -30,
+            -30, 0, 15, 20, 20, 15, 0, -30,
+            -30, 5, 10, 15, 15, 10, 5, -30,
+            -40, -20, 0, 5, 5, 0, -20, -40,
+            -50, -40, -30, -30, -30, -30, -40, -50
+    };
+    private static final int[] BISHOP_TABLE = {
+            -20, -10, -10, -10, -10, -10, -10, -20,
+            -10, 0, 0, 0, 0, 0, 0, -10,
+            -10, 0, 5, 10, 10, 5, 0, -10,
+            -10, 5, 5, 10, 10, 5, 5, -10,
+            -10, 0, 10, 10, 10, 10, 0, -10,
+            -10, 10, 10, 10, 10, 10, 10, -10,
+            -10, 5, 0, 0, 0, 0, 5, -10,
+            -20, -10, -10, -10, -10, -10, -10, -20
+    };
+    private static final int[] ROOK_MG = {
+            0, 0, 0, 0, 0, 0, 0, 0,
+            5, 10, 10, 10, 10, 10, 10, 5,
+            -5, 0, 0, 0, 0, 0, 0, -5,
+            -5, 0, 0, 0, 0, 0, 0, -5,
+            -5, 0, 0, 0, 0, 0, 0, -5,
+            -5, 0, 0, 0, 0, 0, 0, -5,
+            -5, 0, 0, 0, 0, 0, 0, -5,
+            0, 0, 0, 5, 5, 0, 0, 0
+    };
+    private static final int[] ROOK_EG = {
+            5, 5, 5, 5, 5, 5, 5, 5,
+            10, 10, 10, 10, 10, 10, 10, 10,
+            0, 0, 0, 0, 0, 0, 0, 0,
+            0, 0, 0, 0, 0, 0, 0, 0,
+            0, 0, 0, 0, 0, 0, 0, 0,
+            0, 0, 0, 0, 0, 0, 0, 0,
+            0, 0, 0, 0, 0, 0, 0, 0,
+            0, 0, 0, 0, 0, 0, 0, 0
+    };
+    private static final int[] QUEEN_TABLE = {
+            -20, -10, -10, -5, -5, -10, -10, -20,
+            -10, 0, 0, 0, 0, 0, 0, -10,
+            -10, 0, 5, 5, 5, 5, 0, -10,
+            -5, 0, 5, 5, 5, 5, 0, -5,
+            0, 0, 5, 5, 5, 5, 0, -5,
+            -10, 5, 5, 5, 5, 5, 0, -10,
+            -10, 0, 5, 0, 0, 0, 0, -10,
+            -20, -10, -10, -5, -5, -10, -10, -20
+    };
+    private static final int[] KING_MG = {
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -20, -30, -30, -40, -40, -30, -30, -20,
+            -10, -20, -20, -20, -20, -20, -20, -10,
+            20, 20, 0, 0, 0, 0, 20, 20,
+            20, 30, 10, 0, 0, 10, 30, 20
+    };
+    private static final int[] KING_EG = {
+            -50, -40, -30, -20, -20, -30, -40, -50,
+            -30, -20, -10, 0, 0, -10, -20, -30,
+            -30, -10, 20, 30, 30, 20, -10, -30,
+            -30, -10, 30, 40, 40, 30, -10, -30,
+            -30, -10, 30, 40, 40, 30, -10, -30,
+            -30, -10, 20, 30, 30, 20, -10, -30,
+            -30, -30, 0, 0, 0, 0, -30, -30,
+            -50, -30, -30, -30, -30, -30, -30, -50
+    };
+
+    private static final int[][] MG_TABLES = {PAWN_MG, KNIGHT_TABLE, BISHOP_TABLE, ROOK_MG, QUEEN_TABLE, KING_MG};
+    private static final int[][] EG_TABLES = {PAWN_EG, KNIGHT_TABLE, BISHOP_TABLE, ROOK_EG, QUEEN_TABLE, KING_EG};
+
+    // Value plus table bonus by color, type and square, negated for black
+    private static final int[][][] MG = new int[2][6][64];
+    private static final int[][][] EG = new int[2][6][64];
+
+    private static final long[] FILE_MASKS = new long[8];
+    private static final long[] ADJACENT_FILES = new long[8];
+    // [color][square] squares ahead of a pawn on its own and both neighbouring files
+    private static final long[][] PASSED_SPANS = new long[2][64];
+
+    static {
+        for (int file = 0; file < 8; file++) FILE_MASKS[file] = 0x0101010101010101L << file;
+        for (int file = 0; file < 8; file++) {
+            ADJACENT_FILES[file] = (file > 0 ? FILE_MASKS[file - 1] : 0) | (file < 7 ? FILE_MASKS[file + 1] : 0);
+        }
+        for (int sq = 0; sq < 64; sq++) {
+            long files = FILE_MASKS[sq & 7] | ADJACENT_FILES[sq & 7];
+            int row = sq >> 3;
+            // White moves towards row 0, black towards row 7
+            PASSED_SPANS[WHITE][sq] = files & ((1L << (row * 8)) - 1);
+            PASSED_SPANS[BLACK][sq] = row == 7 ? 0 : files & (-1L << ((row + 1) * 8));
+        }
+        for (int type = PAWN; type <= KING; type++) {
+            for (int sq = 0; sq < 64; sq++) {
+                MG[WHITE][type][sq] = MG_VALUES[type] + MG_TABLES[type][sq];
+                EG[WHITE][type][sq] = EG_VALUES[type] + EG_TABLES[type][sq];
+                MG[BLACK][type][sq ^ 56] = -MG[WHITE][type][sq];
+                EG[BLACK][type][sq ^ 56] = -EG[WHITE][type][sq];
+            }
+        }
+    }
+
+    private Evaluation() {
+    }
+
+    static int mg(int color, int type, int sq) { return MG[color][type][sq]; }
+    static int eg(int color, int type, int sq) { return EG[color][type][sq]; }
+
+    public static int evaluate(Position position) {
+        return evaluate(position, null);
+    }
+
+    /**
+     * The middlegame and endgame sums plus pawn structure, blended by game phase. The structure comes from
+     * the pawn table when one is given. Promotions can push the phase past MAX_PHASE, which then counts as
+     * a full middlegame.
+     */
+    static int evaluate(Position position, PawnHashTable pawns) {
+        int mg = position.mgScore(), eg = position.egScore();
+        long whitePassed, blackPassed;
+        if (pawns != null) {
+            int slot = pawns.probe(position);
+            mg += pawns.mgScore(slot);
+            eg += pawns.egScore(slot);
+            whitePassed = pawns.passedPawns(slot, WHITE);
+            blackPassed = pawns.passedPawns(slot, BLACK);
+        } else {
+            whitePassed = passedPawns(position, WHITE);
+            blackPassed = passedPawns(position, BLACK);
+            long structure = pawnStructure(position, whitePassed, blackPassed);
+            mg += mgPart(structure);
+            eg += egPart(structure);
+        }
+        eg += passedPawnKings(position, WHITE, whitePassed) - passedPawnKings(position, BLACK, blackPassed);
+
+        int phase = Math.min(position.phase(), MAX_PHASE);
+        return (mg * phase + eg * (MAX_PHASE - phase)) / MAX_PHASE;
+    }
+
+    /**
+     * Pawns of the color with no enemy pawn ahead of them on their own or a neighbouring file.
+     */
+    static long passedPawns(Position position, int color) {
+        long enemyPawns = position.pieces(color ^ 1, PAWN);
+        long passed = 0L;
+        for (long b = position.pieces(color, PAWN); b != 0; b &= b - 1) {
+            int sq = Long.numberOfTrailingZeros(b);
+            if ((PASSED_SPANS[color][sq] & enemyPawns) == 0) passed |= 1L << sq;
+        }
+        return passed;
+    }
+
+    /**
+     * Doubled, isolated and passed pawn terms from white's point of view, packed by pack().
+     * Depends on nothing but the pawns, which is what lets PawnHashTable cache it.
+     */
+    static long pawnStructure(Position position, long whitePassed, long blackPassed) {
+        int mg = 0, eg = 0;
+        for (int color = WHITE; color <= BLACK; color++) {
+            int sign = color == WHITE ? 1 : -1;
+            long own = position.pieces(color, PAWN);
+            long passed = color == WHITE ? whitePassed : blackPassed;
+            for (int file = 0; file < 8; file++) {
+                int count = Long.bitCount(own & FILE_MASKS[file]);
+                if (count == 0) continue;
+                if (count > 1) {
+                    mg += sign * DOUBLED_MG * (count - 1);
+                    eg += sign * DOUBLED_EG * (count - 1);
+                }
+                if ((own & ADJACENT_FILES[file]) == 0) {
+                    mg += sign * ISOLATED_MG * count;
+                    eg += sign * ISOLATED_EG * count;
+                }
+            }
+            for (long b = passed; b != 0; b &= b - 1) {
+                int rank = relativeRank(color, Long.numberOfTrailingZeros(b));
+                mg += sign * PASSED_MG[rank];
+                eg += sign * PASSED_EG[rank];
+            }
+        }
+        return pack(mg, eg);
+    }
+
+    // Endgame bonus for keeping the enemy king away from the square in front of each passed pawn
+    private static int passedPawnKings(Position position, int color, long passed) {
+        int ownKing = position.kingSquare(color), enemyKing = position.kingSquare(color ^ 1);
+        if (passed == 0 || ownKing < 0 || enemyKing < 0) return 0;
+        int bonus = 0;
+        for (long b = passed; b != 0; b &= b - 1) {
+            int sq = Long.numberOfTrailingZeros(b);
+            int weight = relativeRank(color, sq) - 2;
+            if (weight <= 0) continue;
+            int stop = color == WHITE ? sq - 8 : sq + 8;
+            bonus += weight * (PASSED_ENEMY_KING * distance(enemyKing, stop) - PASSED_OWN_KING * distance(ownKing, stop));
+        }
+        return bonus;
+    }
+
+    // 1 for a pawn on its starting rank, 6 for one about to promote
+    private static int relativeRank(int color, int sq) {
+        return color == WHITE ? 7 - (sq >> 3) : sq >> 3;
+    }
+
+    private static int distance(int a, int b) {
+        return Math.max(Math.abs((a >> 3) - (b >> 3)), Math.abs((a & 7) - (b & 7)));
+    }
+
+    static long pack(int mg, int eg) { return ((long) mg << 32) | (eg & 0xFFFFFFFFL); }
+    static int mgPart(long packed) { return (int) (packed >> 32); }
+    static int egPart(long packed) { return (int) packed; }
+}
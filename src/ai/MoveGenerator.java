@@ -0,0 +1,233 @@
+package ai;
+
+import static ai.Position.*;
+
+/**
+ * Bitboard move generator for Position.
+ * Moves are packed into an int: from (6 bits) | to (6 bits) | flag (3 bits) | promotion type (3 bits).
+ */
+public final class MoveGenerator {
+    public static final int NO_MOVE = 0;
+    public static final int QUIET = 0, DOUBLE_PUSH = 1, CASTLE = 2, EN_PASSANT = 3, PROMOTION = 4;
+
+    private MoveGenerator() {
+    }
+
+    public static int encode(int from, int to, int flag, int promotion) {
+        return from | (to << 6) | (flag << 12) | (promotion << 15);
+    }
+
+    public static int from(int move) { return move & 63; }
+    public static int to(int move) { return (move >>> 6) & 63; }
+    public static int flag(int move) { return (move >>> 12) & 7; }
+    public static int promotion(int move) { return (move >>> 15) & 7; }
+
+    /**
+     * The move in coordinate notation, such as e2e4 or e7e8q.
+     */
+    public static String toString(int move) {
+        String text = squareName(from(move)) + squareName(to(move));
+        return flag(move) == PROMOTION ? text + "pnbrqk".charAt(promotion(move)) : text;
+    }
+
+    private static String squareName(int sq) {
+        return "" + (char) ('a' + (sq & 7)) + (8 - (sq >> 3));
+    }
+
+    /**
+     * Fills the list with all legal moves for the side to move.
+     */
+    public static void generateLegalMoves(Position pos, MoveList list) {
+        // Generated in place after whatever the list already holds, then compacted to the legal ones
+        int start = list.size();
+        generatePseudoLegalMoves(pos, list);
+        int end = list.size();
+        list.truncate(start);
+        int color = pos.sideToMove();
+        int king = pos.kingSquare(color);
+        boolean inCheck = pos.isInCheck(color);
+        for (int i = start; i < end; i++) {
+            int move = list.get(i);
+            if ((!inCheck && cannotExposeKing(move, king)) || isLegal(pos, move)) list.add(move);
+        }
+    }
+
+    /**
+     * Whether a pseudo-legal move leaves the mover's king safe.
+     */
+    public static boolean isLegal(Position pos, int move) {
+        int color = pos.sideToMove();
+        pos.makeMove(move);
+        boolean legal = !pos.isInCheck(color);
+        pos.unmakeMove(move);
+        return legal;
+    }
+
+    // Out of check only a king move, en passant, or a piece leaving the line it shares with its king can expose the
+    // king, so any other move is legal without being played
+    private static boolean cannotExposeKing(int move, int king) {
+        if (king < 0) return true;
+        int from = from(move);
+        if (from == king || flag(move) == EN_PASSANT) return false;
+        long line = Bitboards.LINE[king][from];
+        return line == 0 || (line & (1L << to(move))) != 0;
+    }
+
+    /**
+     * Whether the move is one generatePseudoLegalMoves would produce in this position. Moves that come from
+     * elsewhere, like the transposition table or the killer slots, are checked with this before being played.
+     */
+    public static boolean isPseudoLegal(Position pos, int move) {
+        if (move == NO_MOVE) return false;
+        int color = pos.sideToMove();
+        int from = from(move), to = to(move), flag = flag(move);
+        int piece = pos.pieceAt(from);
+        if (piece == NO_PIECE || piece / 6 != color) return false;
+        int target = pos.pieceAt(to);
+        if (target != NO_PIECE && target / 6 == color) return false;
+        long occupied = pos.occupied(), toBit = 1L << to;
+
+        int type = piece % 6;
+        if (type == PAWN) {
+            int push = color == WHITE ? -8 : 8;
+            long attacks = Bitboards.PAWN_ATTACKS[color][from];
+            if (flag == EN_PASSANT) return to == pos.enPassantSquare() && (attacks & toBit) != 0;
+            if (flag == DOUBLE_PUSH) {
+                return (from >> 3) == (color == WHITE ? 6 : 1) && to == from + 2 * push
+                        && (occupied & ((1L << (from + push)) | toBit)) == 0;
+            }
+            boolean promotes = (to >> 3) == (color == WHITE ? 0 : 7);
+            if (promotes ? flag != PROMOTION || promotion(move) < KNIGHT || promotion(move) > QUEEN : flag != QUIET) return false;
+            return target != NO_PIECE ? (attacks & toBit) != 0 : to == from + push;
+        }
+        if (flag == CASTLE) {
+            return type == KING && Math.abs(to - from) == 2 && canCastle(pos, color, from, to > from, occupied);
+        }
+        if (flag != QUIET) return false;
+        long attacks = switch (type) {
+            case KNIGHT -> Bitboards.KNIGHT_ATTACKS[from];
+            case BISHOP -> Bitboards.bishopAttacks(from, occupied);
+            case ROOK -> Bitboards.rookAttacks(from, occupied);
+            case QUEEN -> Bitboards.queenAttacks(from, occupied);
+            default -> Bitboards.KING_ATTACKS[from];
+        };
+        return (attacks & toBit) != 0;
+    }
+
+    /**
+     * Fills the list with moves that follow piece movement rules but may leave the king in check.
+     * Castling is only generated when the king does not start on, cross or land on an attacked square.
+     */
+    public static void generatePseudoLegalMoves(Position pos, MoveList list) {
+        generateCaptures(pos, list);
+        generateQuiets(pos, list);
+    }
+
+    /**
+     * Captures, en passant and promotions (including quiet ones): the moves that change material.
+     */
+    public static void generateCaptures(Position pos, MoveList list) {
+        int color = pos.sideToMove();
+        long enemies = pos.occupancy(color ^ 1);
+        long occupied = pos.occupied();
+
+        int push = color == WHITE ? -8 : 8;
+        int promotionRow = color == WHITE ? 0 : 7;
+        int ep = pos.enPassantSquare();
+        for (long b = pos.pieces(color, PAWN); b != 0; b &= b - 1) {
+            int from = Long.numberOfTrailingZeros(b);
+            long attacks = Bitboards.PAWN_ATTACKS[color][from];
+            for (long captures = attacks & enemies; captures != 0; captures &= captures - 1) {
+                addPawnMove(list, from, Long.numberOfTrailingZeros(captures), promotionRow);
+            }
+            if (ep >= 0 && (attacks & (1L << ep)) != 0) {
+                list.add(encode(from, ep, EN_PASSANT, 0));
+            }
+            int to = from + push;
+            if ((to >> 3) == promotionRow && (occupied & (1L << to)) == 0) {
+                addPawnMove(list, from, to, promotionRow);
+            }
+        }
+        generatePieceMoves(pos, list, color, enemies, occupied);
+    }
+
+    /**
+     * Non-capturing moves that are not promotions, including double pawn pushes and castling.
+     */
+    public static void generateQuiets(Position pos, MoveList list) {
+        int color = pos.sideToMove();
+        long occupied = pos.occupied();
+        long empty = ~occupied;
+
+        int push = color == WHITE ? -8 : 8;
+        int startRow = color == WHITE ? 6 : 1;
+        int promotionRow = color == WHITE ? 0 : 7;
+        for (long b = pos.pieces(color, PAWN); b != 0; b &= b - 1) {
+            int from = Long.numberOfTrailingZeros(b);
+            int to = from + push;
+            if ((to >> 3) == promotionRow || (occupied & (1L << to)) != 0) continue;
+            list.add(encode(from, to, QUIET, 0));
+            int doubleTo = to + push;
+            if ((from >> 3) == startRow && (occupied & (1L << doubleTo)) == 0) {
+                list.add(encode(from, doubleTo, DOUBLE_PUSH, 0));
+            }
+        }
+        generatePieceMoves(pos, list, color, empty, occupied);
+        int king = pos.kingSquare(color);
+        if (king >= 0) generateCastling(pos, list, color, king, occupied);
+    }
+
+    // Knight, slider and king moves landing on the target squares
+    private static void generatePieceMoves(Position pos, MoveList list, int color, long targets, long occupied) {
+        for (long b = pos.pieces(color, KNIGHT); b != 0; b &= b - 1) {
+            int from = Long.numberOfTrailingZeros(b);
+            addMoves(list, from, Bitboards.KNIGHT_ATTACKS[from] & targets);
+        }
+        for (long b = pos.pieces(color, BISHOP); b != 0; b &= b - 1) {
+            int from = Long.numberOfTrailingZeros(b);
+            addMoves(list, from, Bitboards.bishopAttacks(from, occupied) & targets);
+        }
+        for (long b = pos.pieces(color, ROOK); b != 0; b &= b - 1) {
+            int from = Long.numberOfTrailingZeros(b);
+            addMoves(list, from, Bitboards.rookAttacks(from, occupied) & targets);
+        }
+        for (long b = pos.pieces(color, QUEEN); b != 0; b &= b - 1) {
+            int from = Long.numberOfTrailingZeros(b);
+            addMoves(list, from, Bitboards.queenAttacks(from, occupied) & targets);
+        }
+        int king = pos.kingSquare(color);
+        if (king >= 0) addMoves(list, king, Bitboards.KING_ATTACKS[king] & targets);
+    }
+
+    private static void addPawnMove(MoveList list, int from, int to, int promotionRow) {
+        if ((to >> 3) == promotionRow) {
+            for (int type = QUEEN; type >= KNIGHT; type--) list.add(encode(from, to, PROMOTION, type));
+        } else {
+            list.add(encode(from, to, QUIET, 0));
+        }
+    }
+
+    private static void generateCastling(Position pos, MoveList list, int color, int king, long occupied) {
+        int rights = pos.castlingRights() & (color == WHITE ? WHITE_KINGSIDE | WHITE_QUEENSIDE : BLACK_KINGSIDE | BLACK_QUEENSIDE);
+        if (rights == 0) return;
+        if (canCastle(pos, color, king, true, occupied)) list.add(encode(king, king + 2, CASTLE, 0));
+        if (canCastle(pos, color, king, false, occupied)) list.add(encode(king, king - 2, CASTLE, 0));
+    }
+
+    // The right is held, the squares between king and rook are empty, and the king does not start on, cross or land on an attacked square
+    private static boolean canCastle(Position pos, int color, int king, boolean kingSide, long occupied) {
+        int right = kingSide ? (color == WHITE ? WHITE_KINGSIDE : BLACK_KINGSIDE) : (color == WHITE ? WHITE_QUEENSIDE : BLACK_QUEENSIDE);
+        if ((pos.castlingRights() & right) == 0) return false;
+        int step = kingSide ? 1 : -1;
+        if ((occupied & Bitboards.BETWEEN[king][kingSide ? king + 3 : king - 4]) != 0) return false;
+        int enemy = color ^ 1;
+        return !pos.isSquareAttacked(king, enemy) && !pos.isSquareAttacked(king + step, enemy)
+                && !pos.isSquareAttacked(king + 2 * step, enemy);
+    }
+
+    private static void addMoves(MoveList list, int from, long targets) {
+        for (; targets != 0; targets &= targets - 1) {
+            list.add(encode(from, Long.numberOfTrailingZeros(targets), QUIET, 0));
+        }
+    }
+}
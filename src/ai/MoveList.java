@@ -0,0 +1,52 @@
+package ai;
+
+/**
+ * A growable list of moves encoded as ints by MoveGenerator.
+ */
+public class MoveList {
+    // Comfortably above the most moves any position has, so that a list of this capacity never grows
+    public static final int MAX_MOVES = 256;
+
+    private int[] moves;
+    private int size;
+
+    public MoveList() {
+        this(64);
+    }
+
+    public MoveList(int capacity) {
+        moves = new int[capacity];
+    }
+
+    public void add(int move) {
+        if (size == moves.length) moves = java.util.Arrays.copyOf(moves, size * 2);
+        moves[size++] = move;
+    }
+
+    public int get(int index) {
+        return moves[index];
+    }
+
+    public void set(int index, int move) {
+        moves[index] = move;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Drops every move from the index on. The entries stay readable until overwritten by add.
+     */
+    public void truncate(int size) {
+        this.size = size;
+    }
+}
@@ -0,0 +1,122 @@
+package ai;
+
+import static ai.Position.*;
+
+/**
+ * Hands out the moves of one node in search order, generating each group only when the previous one runs out:
+ * the TT move (played without generating anything), captures and promotions by MVV-LVA, the two killers, and
+ * finally the remaining quiet moves by history. A node that cuts off early never generates its quiet moves.
+ * <p>
+ * Moves are pseudo-legal; the search rejects those that leave the king in check after making them.
+ * The search keeps one picker per ply and reuses it, so picking allocates nothing.
+ */
+final class MovePicker {
+    private static final int TT_MOVE = 0, GENERATE_CAPTURES = 1, CAPTURES = 2, FIRST_KILLER = 3, SECOND_KILLER = 4,
+            GENERATE_QUIETS = 5, QUIETS = 6, DONE = 7;
+
+    private final MoveList moves = new MoveList(MoveList.MAX_MOVES);
+    private final int[] scores = new int[MoveList.MAX_MOVES];
+
+    private Position position;
+    private int ttMove, killer1, killer2;
+    private int[][] history; // From-to butterfly table of the side to move
+    private int stage;
+    private int index;
+
+    /**
+     * Starts picking for the node; the killers and history belong to its ply and side to move.
+     */
+    void init(Position position, int ttMove, int killer1, int killer2, int[][] history) {
+        this.position = position;
+        this.ttMove = ttMove;
+        this.killer1 = killer1;
+        this.killer2 = killer2;
+        this.history = history;
+        this.stage = TT_MOVE;
+    }
+
+    /**
+     * The next move to try, or NO_MOVE when all have been handed out.
+     */
+    int next() {
+        while (true) {
+            switch (stage) {
+                case TT_MOVE -> {
+                    stage = GENERATE_CAPTURES;
+                    if (MoveGenerator.isPseudoLegal(position, ttMove)) return ttMove;
+                }
+                case GENERATE_CAPTURES -> {
+                    moves.clear();
+                    MoveGenerator.generateCaptures(position, moves);
+                    for (int i = 0; i < moves.size(); i++) scores[i] = mvvLva(position, moves.get(i));
+                    index = 0;
+                    stage = CAPTURES;
+                }
+                case CAPTURES -> {
+                    int move = pickBest();
+                    if (move == MoveGenerator.NO_MOVE) stage = FIRST_KILLER;
+                    else if (move != ttMove) return move;
+                }
+                case FIRST_KILLER -> {
+                    stage = SECOND_KILLER;
+                    if (isPlayableKiller(killer1)) return killer1;
+                }
+                case SECOND_KILLER -> {
+                    stage = GENERATE_QUIETS;
+                    if (killer2 != killer1 && isPlayableKiller(killer2)) return killer2;
+                }
+                case GENERATE_QUIETS -> {
+                    moves.clear();
+                    MoveGenerator.generateQuiets(position, moves);
+                    for (int i = 0; i < moves.size(); i++) {
+                        int move = moves.get(i);
+                        scores[i] = history[MoveGenerator.from(move)][MoveGenerator.to(move)];
+                    }
+                    index = 0;
+                    stage = QUIETS;
+                }
+                case QUIETS -> {
+                    int move = pickBest();
+                    if (move == MoveGenerator.NO_MOVE) stage = DONE;
+                    else if (move != ttMove && move != killer1 && move != killer2) return move;
+                }
+                default -> {
+                    return MoveGenerator.NO_MOVE;
+                }
+            }
+        }
+    }
+
+    // Killers are quiet moves from sibling nodes; here they may be illegal, or captures already handed out
+    private boolean isPlayableKiller(int killer) {
+        return killer != ttMove && MoveGenerator.isPseudoLegal(position, killer)
+                && SearchWorker.isQuiet(position, killer);
+    }
+
+    // One step of a selection sort: most nodes use only the first few moves, so sorting all of them would be wasted
+    private int pickBest() {
+        if (index >= moves.size()) return MoveGenerator.NO_MOVE;
+        int best = index;
+        for (int i = index + 1; i < moves.size(); i++) {
+            if (scores[i] > scores[best]) best = i;
+        }
+        int move = moves.get(best);
+        moves.set(best, moves.get(index));
+        scores[best] = scores[index];
+        index++;
+        return move;
+    }
+
+    // Most valuable victim first, least valuable attacker breaking ties; promotions count the promoted piece
+    static int mvvLva(Position position, int move) {
+        int score = 16 * capturedValue(position, move) - ChessAI.PIECE_VALUES[position.pieceAt(MoveGenerator.from(move)) % 6];
+        if (MoveGenerator.flag(move) == MoveGenerator.PROMOTION) score += 16 * ChessAI.PIECE_VALUES[MoveGenerator.promotion(move)];
+        return score;
+    }
+
+    static int capturedValue(Position position, int move) {
+        if (MoveGenerator.flag(move) == MoveGenerator.EN_PASSANT) return ChessAI.PIECE_VALUES[PAWN];
+        int captured = position.pieceAt(MoveGenerator.to(move));
+        return captured == NO_PIECE ? 0 : ChessAI.PIECE_VALUES[captured % 6];
+    }
+}
@@ -0,0 +1,115 @@
+package ai;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+/**
+ * A Polyglot (.bin) opening book, memory-mapped rather than read into the heap, so opening a book of hundreds
+ * of megabytes costs nothing until positions are looked up and the OS pages in the entries touched.
+ * Entries are 16 big-endian bytes sorted by key: key (8), move (2), weight (2), learn (4).
+ */
+public final class OpeningBook {
+    private static final int ENTRY_SIZE = 16;
+    private static final int MAX_CANDIDATES = 64;
+
+    private final MappedByteBuffer entries;
+    private final int entryCount;
+    private final Random random = new Random();
+
+    private OpeningBook(MappedByteBuffer entries) {
+        this.entries = entries;
+        this.entryCount = entries.capacity() / ENTRY_SIZE;
+    }
+
+    /**
+     * Maps the book file. The mapping stays valid after the channel is closed.
+     */
+    public static OpeningBook open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            // A single mapping is int-indexed; that still allows books of up to 134 million entries
+            if (size > Integer.MAX_VALUE) throw new IOException("Opening book too large to map: " + file);
+            return new OpeningBook(channel.map(FileChannel.MapMode.READ_ONLY, 0, size - size % ENTRY_SIZE));
+        }
+    }
+
+    public int size() {
+        return entryCount;
+    }
+
+    /**
+     * Picks a book move for the position, at random in proportion to the entry weights.
+     * Returns an encoded legal move (see MoveGenerator), or NO_MOVE if the position is not in the book.
+     */
+    public int probe(Position position) {
+        long key = PolyglotKey.compute(position);
+
+        MoveList legal = new MoveList();
+        MoveGenerator.generateLegalMoves(position, legal);
+        int[] moves = new int[MAX_CANDIDATES];
+        int[] weights = new int[MAX_CANDIDATES];
+        int count = 0, totalWeight = 0;
+        for (int i = firstEntry(key); i < entryCount && count < MAX_CANDIDATES && keyAt(i) == key; i++) {
+            int offset = i * ENTRY_SIZE;
+            int move = toEngineMove(entries.getShort(offset + 8) & 0xFFFF, legal);
+            int weight = entries.getShort(offset + 10) & 0xFFFF;
+            if (move == MoveGenerator.NO_MOVE || weight == 0) continue;
+            moves[count] = move;
+            weights[count++] = weight;
+            totalWeight += weight;
+        }
+        if (count == 0) return MoveGenerator.NO_MOVE;
+
+        int pick = random.nextInt(totalWeight);
+        for (int i = 0; i < count; i++) {
+            pick -= weights[i];
+            if (pick < 0) return moves[i];
+        }
+        return moves[count - 1];
+    }
+
+    // Index of the first entry whose key is not below the given key, comparing keys as unsigned
+    private int firstEntry(long key) {
+        int low = 0, high = entryCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (Long.compareUnsigned(keyAt(mid), key) < 0) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    private long keyAt(int index) {
+        return entries.getLong(index * ENTRY_SIZE);
+    }
+
+    /**
+     * Decodes a Polyglot move (to file, to rank, from file, from rank, promotion; 3 bits each) and
+     * matches it against the legal moves. Polyglot writes castling as the king capturing its own rook.
+     */
+    private static int toEngineMove(int bookMove, MoveList legal) {
+        int toFile = bookMove & 7, toRank = (bookMove >>> 3) & 7;
+        int fromFile = (bookMove >>> 6) & 7, fromRank = (bookMove >>> 9) & 7;
+        int promotion = (bookMove >>> 12) & 7; // 0 none, 1 knight .. 4 queen, so it equals the engine type
+        int from = (7 - fromRank) * 8 + fromFile;
+        int to = (7 - toRank) * 8 + toFile;
+
+        for (int i = 0; i < legal.size(); i++) {
+            int move = legal.get(i);
+            if (MoveGenerator.from(move) != from) continue;
+            int flag = MoveGenerator.flag(move);
+            if (flag == MoveGenerator.CASTLE) {
+                int rookFile = MoveGenerator.to(move) > from ? 7 : 0;
+                if (to == (from & ~7) + rookFile) return move;
+            } else if (MoveGenerator.to(move) == to
+                    && (flag == MoveGenerator.PROMOTION ? MoveGenerator.promotion(move) : 0) == promotion) {
+                return move;
+            }
+        }
+        return MoveGenerator.NO_MOVE;
+    }
+}
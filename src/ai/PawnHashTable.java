@@ -0,0 +1,68 @@
+package ai;
+
+import static ai.Position.*;
+
+/**
+ * Cache of pawn structure evaluations keyed by Position.pawnHash(). The pawns change only on pawn moves and
+ * pawn captures, so nearly every leaf of a search finds its structure here instead of evaluating it again.
+ * Each entry holds the packed middlegame and endgame score and both sides' passed pawns.
+ * ChessAI gives each search thread its own table and keeps it from move to move, so pawn structures evaluated
+ * for one move are still there for the next, and entries need no protection against torn writes.
+ */
+final class PawnHashTable {
+    static final int DEFAULT_ENTRIES = 1 << 15;
+
+    // An empty slot reads as the pawnless structure (score 0, no passed pawns), so key 0 needs no special case
+    private final long[] keys;
+    private final long[] scores;
+    private final long[][] passed; // [color][slot]
+    private final int mask;
+
+    long probes;
+    long hits;
+
+    PawnHashTable(int entries) {
+        int size = Integer.highestOneBit(Math.max(1, entries));
+        this.keys = new long[size];
+        this.scores = new long[size];
+        this.passed = new long[2][size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * The slot holding the structure of the position's pawns, evaluating and storing it on a miss.
+     */
+    int probe(Position position) {
+        long key = position.pawnHash();
+        int slot = (int) key & mask;
+        probes++;
+        if (keys[slot] == key) {
+            hits++;
+            return slot;
+        }
+        keys[slot] = key;
+        passed[WHITE][slot] = Evaluation.passedPawns(position, WHITE);
+        passed[BLACK][slot] = Evaluation.passedPawns(position, BLACK);
+        scores[slot] = Evaluation.pawnStructure(position, passed[WHITE][slot], passed[BLACK][slot]);
+        return slot;
+    }
+
+    int mgScore(int slot) { return Evaluation.mgPart(scores[slot]); }
+    int egScore(int slot) { return Evaluation.egPart(scores[slot]); }
+    long passedPawns(int slot, int color) { return passed[color][slot]; }
+
+    /**
+     * Starts counting probes and hits afresh, keeping the entries.
+     */
+    void resetCounters() {
+        probes = 0;
+        hits = 0;
+    }
+
+    /**
+     * Percentage of probes answered from the table since the counters were last reset.
+     */
+    int hitRate() {
+        return probes == 0 ? 0 : (int) (100 * hits / probes);
+    }
+}
@@ -0,0 +1,193 @@
+package ai;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Counts the leaf nodes of the legal move tree to a fixed depth. Matching the published counts for the
+ * reference positions below checks move generation, make and unmake (castling, en passant, promotions,
+ * pins and checks) together, and the time taken is the generator's throughput.
+ * <p>
+ * Usage: {@code java ai.Perft [-parallel] suite [maxDepth]}, {@code java ai.Perft [-parallel] perft <depth> <fen>}
+ * or {@code java ai.Perft divide <depth> <fen>}. The parallel mode searches each root move as its own
+ * fork-join task on a private copy of the position.
+ */
+public final class Perft {
+    private static final int DEFAULT_SUITE_DEPTH = 4;
+
+    // Reference positions with their node counts from depth 1 upwards
+    private static final Object[][] SUITE = {
+            {"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+                    new long[]{20, 400, 8902, 197281, 4865609, 119060324}},
+            {"r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+                    new long[]{48, 2039, 97862, 4085603, 193690690}},
+            {"8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+                    new long[]{14, 191, 2812, 43238, 674624, 11030083, 178633661}},
+            {"r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+                    new long[]{6, 264, 9467, 422333, 15833292}},
+            {"rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+                    new long[]{44, 1486, 62379, 2103487, 89941194}},
+            {"r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+                    new long[]{46, 2079, 89890, 3894594, 164075551}},
+    };
+
+    private Perft() {
+    }
+
+    public static void main(String[] args) {
+        boolean parallel = args.length > 0 && args[0].equals("-parallel");
+        int first = parallel ? 1 : 0;
+        String command = args.length > first ? args[first] : "suite";
+        switch (command) {
+            case "suite" -> {
+                int maxDepth = args.length > first + 1 ? Integer.parseInt(args[first + 1]) : DEFAULT_SUITE_DEPTH;
+                if (!runSuite(maxDepth, parallel)) System.exit(1);
+            }
+            case "perft" -> {
+                Position position = Position.fromFen(fenArgument(args, first + 2));
+                int depth = Integer.parseInt(args[first + 1]);
+                long start = System.nanoTime();
+                long nodes = parallel ? parallelPerft(position, depth, ForkJoinPool.commonPool()) : perft(position, depth);
+                report("perft(" + depth + ")", nodes, System.nanoTime() - start);
+            }
+            case "divide" -> {
+                Position position = Position.fromFen(fenArgument(args, first + 2));
+                Map<String, Long> counts = divide(position, Integer.parseInt(args[first + 1]));
+                long total = 0;
+                for (Map.Entry<String, Long> entry : counts.entrySet()) {
+                    System.out.println(entry.getKey() + ": " + entry.getValue());
+                    total += entry.getValue();
+                }
+                System.out.println("Moves: " + counts.size() + ", nodes: " + total);
+            }
+            default -> System.out.println("Usage: java ai.Perft [-parallel] suite [maxDepth] | perft <depth> <fen> | divide <depth> <fen>");
+        }
+    }
+
+    // The FEN may arrive as one quoted argument or split over several
+    private static String fenArgument(String[] args, int from) {
+        return String.join(" ", List.of(args).subList(from, args.length));
+    }
+
+    /**
+     * Leaf nodes of the legal move tree below the position. The last ply is counted from the
+     * move list without being played.
+     */
+    public static long perft(Position position, int depth) {
+        if (depth == 0) return 1;
+        MoveList moves = new MoveList();
+        MoveGenerator.generateLegalMoves(position, moves);
+        if (depth == 1) return moves.size();
+        long nodes = 0;
+        for (int i = 0; i < moves.size(); i++) {
+            int move = moves.get(i);
+            position.makeMove(move);
+            nodes += perft(position, depth - 1);
+            position.unmakeMove(move);
+        }
+        return nodes;
+    }
+
+    /**
+     * Perft with one fork-join task per root move.
+     */
+    public static long parallelPerft(Position position, int depth, ForkJoinPool pool) {
+        if (depth <= 1) return perft(position, depth);
+        return pool.invoke(new RootSplit(position.copy(), depth));
+    }
+
+    /**
+     * Node counts below each root move, in generation order and keyed by coordinate notation, for finding
+     * the branch where a count goes wrong.
+     */
+    public static Map<String, Long> divide(Position position, int depth) {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        MoveList moves = new MoveList();
+        MoveGenerator.generateLegalMoves(position, moves);
+        for (int i = 0; i < moves.size(); i++) {
+            int move = moves.get(i);
+            position.makeMove(move);
+            counts.put(MoveGenerator.toString(move), perft(position, depth - 1));
+            position.unmakeMove(move);
+        }
+        return counts;
+    }
+
+    /**
+     * Runs every reference position up to maxDepth (or its deepest known count) and prints each result.
+     * Returns whether all counts matched.
+     */
+    public static boolean runSuite(int maxDepth, boolean parallel) {
+        boolean passed = true;
+        long totalNodes = 0, totalNanos = 0;
+        for (Object[] entry : SUITE) {
+            String fen = (String) entry[0];
+            long[] expected = (long[]) entry[1];
+            for (int depth = 1; depth <= Math.min(maxDepth, expected.length); depth++) {
+                Position position = Position.fromFen(fen);
+                long start = System.nanoTime();
+                long nodes = parallel ? parallelPerft(position, depth, ForkJoinPool.commonPool()) : perft(position, depth);
+                long elapsed = System.nanoTime() - start;
+                boolean ok = nodes == expected[depth - 1];
+                passed &= ok;
+                totalNodes += nodes;
+                totalNanos += elapsed;
+                System.out.printf("%s depth %d: %d%s  %s%n", ok ? "OK  " : "FAIL", depth, nodes,
+                        ok ? "" : " (expected " + expected[depth - 1] + ")", fen);
+            }
+        }
+        report(passed ? "Suite passed" : "Suite FAILED", totalNodes, totalNanos);
+        return passed;
+    }
+
+    private static void report(String label, long nodes, long nanos) {
+        long millis = Math.max(1, nanos / 1_000_000);
+        System.out.printf("%s: %d nodes in %dms (%d knps)%n", label, nodes, millis, nodes / millis);
+    }
+
+    @SuppressWarnings("serial") // ForkJoinTask is Serializable, but perft tasks never leave the process
+    private static final class RootSplit extends RecursiveTask<Long> {
+        private final Position position;
+        private final int depth;
+
+        RootSplit(Position position, int depth) {
+            this.position = position;
+            this.depth = depth;
+        }
+
+        @Override
+        protected Long compute() {
+            MoveList moves = new MoveList();
+            MoveGenerator.generateLegalMoves(position, moves);
+            List<Subtree> subtrees = new ArrayList<>(moves.size());
+            for (int i = 0; i < moves.size(); i++) {
+                Position child = position.copy();
+                child.makeMove(moves.get(i));
+                subtrees.add(new Subtree(child, depth - 1));
+            }
+            long nodes = 0;
+            for (Subtree subtree : invokeAll(subtrees)) nodes += subtree.join();
+            return nodes;
+        }
+    }
+
+    @SuppressWarnings("serial") // As RootSplit
+    private static final class Subtree extends RecursiveTask<Long> {
+        private final Position position;
+        private final int depth;
+
+        Subtree(Position position, int depth) {
+            this.position = position;
+            this.depth = depth;
+        }
+
+        @Override
+        protected Long compute() {
+            return perft(position, depth);
+        }
+    }
+}
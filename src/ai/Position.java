@@ -0,0 +1,403 @@
+package ai;
+
+import chessPieces.Piece;
+import utilz.Constants;
+
+import java.util.Arrays;
+
+/**
+ * Bitboard representation of a chess position, used by the engine for searching.
+ * Board keeps one instance in sync with its Piece[][] mailbox; the AI searches on a copy.
+ * Squares are indexed row * 8 + col, so square 0 is a8 and square 63 is h1.
+ */
+public class Position {
+    public static final int WHITE = 0, BLACK = 1;
+    public static final int PAWN = 0, KNIGHT = 1, BISHOP = 2, ROOK = 3, QUEEN = 4, KING = 5;
+    public static final int NO_PIECE = -1;
+    private static final String FEN_PIECES = "pnbrqk"; // Indexed by piece type
+
+    public static final int WHITE_KINGSIDE = 1, WHITE_QUEENSIDE = 2, BLACK_KINGSIDE = 4, BLACK_QUEENSIDE = 8;
+
+    // Rights that survive a move touching the square (king and rook home squares clear their rights)
+    private static final int[] CASTLING_MASK = new int[64];
+
+    static {
+        Arrays.fill(CASTLING_MASK, 15);
+        CASTLING_MASK[0] &= ~BLACK_QUEENSIDE;
+        CASTLING_MASK[7] &= ~BLACK_KINGSIDE;
+        CASTLING_MASK[4] &= ~(BLACK_KINGSIDE | BLACK_QUEENSIDE);
+        CASTLING_MASK[56] &= ~WHITE_QUEENSIDE;
+        CASTLING_MASK[63] &= ~WHITE_KINGSIDE;
+        CASTLING_MASK[60] &= ~(WHITE_KINGSIDE | WHITE_QUEENSIDE);
+    }
+
+    private final long[][] pieces = new long[2][6];
+    private final long[] occupancy = new long[2];
+    private long occupied;
+    private final int[] mailbox = new int[64]; // color * 6 + type, or NO_PIECE
+
+    private int sideToMove = WHITE;
+    private int castlingRights;
+    private int enPassantSquare = -1;
+    private long hash = Zobrist.whiteToMove(); // Maintained incrementally by every mutator below
+    private long pawnHash; // Zobrist keys of the pawns alone, for the pawn structure cache
+    private int mgScore, egScore, phase; // Evaluation terms, maintained the same way
+
+    // Undo stack: one fixed-size record per move played and not yet taken back, indexed by ply and spread
+    // over primitive arrays sized once. A record holds everything unmakeMove restores rather than recomputes,
+    // so taking a move back only moves bits and copies fields, and neither direction allocates
+    private static final int MAX_MOVES_PLAYED = 256;
+    private final int[] capturedStack = new int[MAX_MOVES_PLAYED];
+    private final int[] castlingStack = new int[MAX_MOVES_PLAYED];
+    private final int[] enPassantStack = new int[MAX_MOVES_PLAYED];
+    private final long[] hashStack = new long[MAX_MOVES_PLAYED];
+    private final long[] pawnHashStack = new long[MAX_MOVES_PLAYED];
+    private final int[] mgStack = new int[MAX_MOVES_PLAYED];
+    private final int[] egStack = new int[MAX_MOVES_PLAYED];
+    private final int[] phaseStack = new int[MAX_MOVES_PLAYED];
+    private int movesPlayed;
+
+    public Position() {
+        Arrays.fill(mailbox, NO_PIECE);
+    }
+
+    public Position copy() {
+        Position copy = new Position();
+        for (int color = 0; color < 2; color++) {
+            System.arraycopy(pieces[color], 0, copy.pieces[color], 0, 6);
+        }
+        System.arraycopy(occupancy, 0, copy.occupancy, 0, 2);
+        System.arraycopy(mailbox, 0, copy.mailbox, 0, 64);
+        copy.occupied = occupied;
+        copy.sideToMove = sideToMove;
+        copy.castlingRights = castlingRights;
+        copy.enPassantSquare = enPassantSquare;
+        copy.hash = hash;
+        copy.pawnHash = pawnHash;
+        copy.mgScore = mgScore;
+        copy.egScore = egScore;
+        copy.phase = phase;
+        return copy;
+    }
+
+    /**
+     * Parses the board, side to move, castling and en passant fields of a FEN string.
+     * The move counters, if present, are ignored.
+     */
+    public static Position fromFen(String fen) {
+        String[] fields = fen.trim().split("\\s+");
+        if (fields.length < 4) throw new IllegalArgumentException("Incomplete FEN: " + fen);
+        Position position = new Position();
+        int row = 0, col = 0;
+        for (char c : fields[0].toCharArray()) {
+            if (c == '/') {
+                row++;
+                col = 0;
+            } else if (Character.isDigit(c)) {
+                col += c - '0';
+            } else {
+                int type = FEN_PIECES.indexOf(Character.toLowerCase(c));
+                if (type < 0 || row > 7 || col > 7) throw new IllegalArgumentException("Bad FEN board: " + fen);
+                position.putPiece(row * 8 + col++, Character.isUpperCase(c) ? WHITE : BLACK, type);
+            }
+        }
+        position.setSideToMove(fields[1].equals("b") ? BLACK : WHITE);
+        int rights = 0;
+        if (fields[2].indexOf('K') >= 0) rights |= WHITE_KINGSIDE;
+        if (fields[2].indexOf('Q') >= 0) rights |= WHITE_QUEENSIDE;
+        if (fields[2].indexOf('k') >= 0) rights |= BLACK_KINGSIDE;
+        if (fields[2].indexOf('q') >= 0) rights |= BLACK_QUEENSIDE;
+        position.setCastlingRights(rights);
+        if (!fields[3].equals("-")) {
+            position.setEnPassantSquare((8 - (fields[3].charAt(1) - '0')) * 8 + (fields[3].charAt(0) - 'a'));
+        }
+        return position;
+    }
+
+    public void clear() {
+        for (int color = 0; color < 2; color++) Arrays.fill(pieces[color], 0L);
+        Arrays.fill(occupancy, 0L);
+        Arrays.fill(mailbox, NO_PIECE);
+        occupied = 0L;
+        sideToMove = WHITE;
+        castlingRights = 0;
+        enPassantSquare = -1;
+        hash = Zobrist.whiteToMove();
+        pawnHash = 0L;
+        mgScore = egScore = phase = 0;
+        movesPlayed = 0;
+    }
+
+    public void putPiece(int sq, int color, int type) {
+        long b = 1L << sq;
+        pieces[color][type] |= b;
+        occupancy[color] |= b;
+        occupied |= b;
+        mailbox[sq] = color * 6 + type;
+        hash ^= Zobrist.piece(color, type, sq);
+        if (type == PAWN) pawnHash ^= Zobrist.piece(color, PAWN, sq);
+        mgScore += Evaluation.mg(color, type, sq);
+        egScore += Evaluation.eg(color, type, sq);
+        phase += Evaluation.PHASE_WEIGHTS[type];
+    }
+
+    public void removePiece(int sq) {
+        int piece = mailbox[sq];
+        if (piece == NO_PIECE) return;
+        long b = ~(1L << sq);
+        int color = piece / 6, type = piece % 6;
+        pieces[color][type] &= b;
+        occupancy[color] &= b;
+        occupied &= b;
+        mailbox[sq] = NO_PIECE;
+        hash ^= Zobrist.piece(color, type, sq);
+        if (type == PAWN) pawnHash ^= Zobrist.piece(color, PAWN, sq);
+        mgScore -= Evaluation.mg(color, type, sq);
+        egScore -= Evaluation.eg(color, type, sq);
+        phase -= Evaluation.PHASE_WEIGHTS[type];
+    }
+
+    private void movePiece(int from, int to) {
+        int piece = mailbox[from];
+        int color = piece / 6, type = piece % 6;
+        long fromTo = (1L << from) | (1L << to);
+        pieces[color][type] ^= fromTo;
+        occupancy[color] ^= fromTo;
+        occupied ^= fromTo;
+        mailbox[from] = NO_PIECE;
+        mailbox[to] = piece;
+        hash ^= Zobrist.piece(color, type, from) ^ Zobrist.piece(color, type, to);
+        if (type == PAWN) pawnHash ^= Zobrist.piece(color, PAWN, from) ^ Zobrist.piece(color, PAWN, to);
+        mgScore += Evaluation.mg(color, type, to) - Evaluation.mg(color, type, from);
+        egScore += Evaluation.eg(color, type, to) - Evaluation.eg(color, type, from);
+    }
+
+    // Bitboard and mailbox updates alone, for unmakeMove: the keys and evaluation terms come back from the record
+    private void placeBits(int sq, int piece) {
+        long b = 1L << sq;
+        int color = piece / 6;
+        pieces[color][piece % 6] |= b;
+        occupancy[color] |= b;
+        occupied |= b;
+        mailbox[sq] = piece;
+    }
+
+    private void clearBits(int sq) {
+        int piece = mailbox[sq];
+        long b = ~(1L << sq);
+        int color = piece / 6;
+        pieces[color][piece % 6] &= b;
+        occupancy[color] &= b;
+        occupied &= b;
+        mailbox[sq] = NO_PIECE;
+    }
+
+    private void moveBits(int from, int to) {
+        int piece = mailbox[from];
+        int color = piece / 6;
+        long fromTo = (1L << from) | (1L << to);
+        pieces[color][piece % 6] ^= fromTo;
+        occupancy[color] ^= fromTo;
+        occupied ^= fromTo;
+        mailbox[from] = NO_PIECE;
+        mailbox[to] = piece;
+    }
+
+    /**
+     * Plays a move encoded by MoveGenerator, saving what unmakeMove needs on the position's own stack.
+     * The move is assumed pseudo-legal for the side to move.
+     */
+    public void makeMove(int move) {
+        int from = MoveGenerator.from(move), to = MoveGenerator.to(move), flag = MoveGenerator.flag(move);
+        int color = sideToMove;
+        int slot = pushState();
+
+        if (flag == MoveGenerator.EN_PASSANT) {
+            int capturedSq = color == WHITE ? to + 8 : to - 8;
+            capturedStack[slot] = mailbox[capturedSq];
+            removePiece(capturedSq);
+        } else if (mailbox[to] != NO_PIECE) {
+            capturedStack[slot] = mailbox[to];
+            removePiece(to);
+        }
+        movePiece(from, to);
+
+        if (flag == MoveGenerator.PROMOTION) {
+            removePiece(to);
+            putPiece(to, color, MoveGenerator.promotion(move));
+        } else if (flag == MoveGenerator.CASTLE) {
+            if (to > from) movePiece(to + 1, to - 1);
+            else movePiece(to - 2, to + 1);
+        }
+
+        setEnPassantSquare(flag == MoveGenerator.DOUBLE_PUSH ? (from + to) >> 1 : -1);
+        setCastlingRights(castlingRights & CASTLING_MASK[from] & CASTLING_MASK[to]);
+        sideToMove ^= 1;
+        hash ^= Zobrist.whiteToMove();
+    }
+
+    /**
+     * Takes back the last move played, which must be the one given.
+     */
+    public void unmakeMove(int move) {
+        int slot = --movesPlayed;
+        int from = MoveGenerator.from(move), to = MoveGenerator.to(move), flag = MoveGenerator.flag(move);
+        sideToMove ^= 1;
+        int color = sideToMove;
+
+        if (flag == MoveGenerator.PROMOTION) {
+            clearBits(to);
+            placeBits(to, color * 6 + PAWN);
+        } else if (flag == MoveGenerator.CASTLE) {
+            if (to > from) moveBits(to - 1, to + 1);
+            else moveBits(to + 1, to - 2);
+        }
+        moveBits(to, from);
+
+        int captured = capturedStack[slot];
+        if (captured != NO_PIECE) {
+            placeBits(flag == MoveGenerator.EN_PASSANT ? (color == WHITE ? to + 8 : to - 8) : to, captured);
+        }
+        restoreState(slot);
+    }
+
+    /**
+     * Passes the turn without moving, for null-move pruning. Clears any en passant square.
+     */
+    public void makeNullMove() {
+        pushState();
+        setEnPassantSquare(-1);
+        sideToMove ^= 1;
+        hash ^= Zobrist.whiteToMove();
+    }
+
+    public void unmakeNullMove() {
+        sideToMove ^= 1;
+        restoreState(--movesPlayed);
+    }
+
+    // Saves the irreversible state before a move and returns its slot
+    private int pushState() {
+        int slot = movesPlayed++;
+        capturedStack[slot] = NO_PIECE;
+        castlingStack[slot] = castlingRights;
+        enPassantStack[slot] = enPassantSquare;
+        hashStack[slot] = hash;
+        pawnHashStack[slot] = pawnHash;
+        mgStack[slot] = mgScore;
+        egStack[slot] = egScore;
+        phaseStack[slot] = phase;
+        return slot;
+    }
+
+    private void restoreState(int slot) {
+        castlingRights = castlingStack[slot];
+        enPassantSquare = enPassantStack[slot];
+        hash = hashStack[slot];
+        pawnHash = pawnHashStack[slot];
+        mgScore = mgStack[slot];
+        egScore = egStack[slot];
+        phase = phaseStack[slot];
+    }
+
+    /**
+     * Whether the color has a knight, bishop, rook or queen. Positions with only king and pawns are where
+     * passing is most likely to be the best move (zugzwang), so null-move pruning is not trusted there.
+     */
+    public boolean hasNonPawnMaterial(int color) {
+        long[] own = pieces[color];
+        return (own[KNIGHT] | own[BISHOP] | own[ROOK] | own[QUEEN]) != 0;
+    }
+
+    public boolean isSquareAttacked(int sq, int byColor) {
+        long[] attacker = pieces[byColor];
+        if ((Bitboards.PAWN_ATTACKS[byColor ^ 1][sq] & attacker[PAWN]) != 0) return true;
+        if ((Bitboards.KNIGHT_ATTACKS[sq] & attacker[KNIGHT]) != 0) return true;
+        if ((Bitboards.KING_ATTACKS[sq] & attacker[KING]) != 0) return true;
+        long rooksQueens = attacker[ROOK] | attacker[QUEEN];
+        if (rooksQueens != 0 && (Bitboards.rookAttacks(sq, occupied) & rooksQueens) != 0) return true;
+        long bishopsQueens = attacker[BISHOP] | attacker[QUEEN];
+        return bishopsQueens != 0 && (Bitboards.bishopAttacks(sq, occupied) & bishopsQueens) != 0;
+    }
+
+    /**
+     * All pieces of both colors attacking the square, with sliders seen through the given occupancy
+     * (which lets SEE reveal x-ray attackers as pieces are exchanged off).
+     */
+    public long attackersTo(int sq, long occupied) {
+        return (Bitboards.PAWN_ATTACKS[BLACK][sq] & pieces[WHITE][PAWN])
+                | (Bitboards.PAWN_ATTACKS[WHITE][sq] & pieces[BLACK][PAWN])
+                | (Bitboards.KNIGHT_ATTACKS[sq] & (pieces[WHITE][KNIGHT] | pieces[BLACK][KNIGHT]))
+                | (Bitboards.KING_ATTACKS[sq] & (pieces[WHITE][KING] | pieces[BLACK][KING]))
+                | (Bitboards.rookAttacks(sq, occupied) & (pieces[WHITE][ROOK] | pieces[BLACK][ROOK] | pieces[WHITE][QUEEN] | pieces[BLACK][QUEEN]))
+                | (Bitboards.bishopAttacks(sq, occupied) & (pieces[WHITE][BISHOP] | pieces[BLACK][BISHOP] | pieces[WHITE][QUEEN] | pieces[BLACK][QUEEN]));
+    }
+
+    public boolean isInCheck(int color) {
+        long king = pieces[color][KING];
+        return king != 0 && isSquareAttacked(Long.numberOfTrailingZeros(king), color ^ 1);
+    }
+
+    public int kingSquare(int color) {
+        long king = pieces[color][KING];
+        return king == 0 ? -1 : Long.numberOfTrailingZeros(king);
+    }
+
+    public long pieces(int color, int type) { return pieces[color][type]; }
+    public long occupancy(int color) { return occupancy[color]; }
+    public long occupied() { return occupied; }
+    public int pieceAt(int sq) { return mailbox[sq]; }
+    public int sideToMove() { return sideToMove; }
+    public int castlingRights() { return castlingRights; }
+    public int enPassantSquare() { return enPassantSquare; }
+    public long hash() { return hash; }
+    public long pawnHash() { return pawnHash; }
+    public int mgScore() { return mgScore; }
+    public int egScore() { return egScore; }
+    public int phase() { return phase; }
+
+    public void setSideToMove(int color) {
+        if (color != sideToMove) hash ^= Zobrist.whiteToMove();
+        this.sideToMove = color;
+    }
+
+    public void setCastlingRights(int rights) {
+        hash ^= Zobrist.castling(castlingRights) ^ Zobrist.castling(rights);
+        this.castlingRights = rights;
+    }
+
+    public void setEnPassantSquare(int sq) {
+        hash ^= Zobrist.enPassant(enPassantSquare) ^ Zobrist.enPassant(sq);
+        this.enPassantSquare = sq;
+    }
+
+    /**
+     * Maps a UI Piece to the engine piece type (PAWN..KING).
+     */
+    public static int typeOf(Piece piece) {
+        return switch (Constants.getType(piece)) {
+            case Constants.PAWN -> PAWN;
+            case Constants.KNIGHT -> KNIGHT;
+            case Constants.BISHOP -> BISHOP;
+            case Constants.ROOK -> ROOK;
+            case Constants.QUEEN -> QUEEN;
+            case Constants.KING -> KING;
+            default -> NO_PIECE;
+        };
+    }
+
+    /**
+     * Maps an engine piece type back to the Constants type used by the UI.
+     */
+    public static int toConstantsType(int type) {
+        return switch (type) {
+            case PAWN -> Constants.PAWN;
+            case KNIGHT -> Constants.KNIGHT;
+            case BISHOP -> Constants.BISHOP;
+            case ROOK -> Constants.ROOK;
+            case QUEEN -> Constants.QUEEN;
+            case KING -> Constants.KING;
+            default -> -1;
+        };
+    }
+}
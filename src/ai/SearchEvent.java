@@ -0,0 +1,55 @@
+package ai;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event covering one engine search, pondering included, with its SearchStats.
+ * Record with {@code -XX:StartFlightRecording} and look for ai.Search in the recording.
+ */
+@Name("ai.Search")
+@Label("Engine Search")
+@Category("Chess")
+@Description("One search from start to best move, with node, transposition table and cutoff counters")
+@StackTrace(false)
+final class SearchEvent extends Event {
+    @Label("Ponder")
+    boolean ponder;
+    @Label("Threads")
+    int threads;
+    @Label("Depth")
+    int depth;
+    @Label("Best Move")
+    String bestMove;
+    @Label("Score")
+    int score;
+    @Label("Nodes")
+    long nodes;
+    @Label("Quiescence Nodes")
+    long qnodes;
+    @Label("TT Probes")
+    long ttProbes;
+    @Label("TT Hits")
+    long ttHits;
+    @Label("Beta Cutoffs")
+    long betaCutoffs;
+    @Label("First Move Cutoffs")
+    long firstMoveCutoffs;
+    @Label("Effective Branching Factor")
+    double effectiveBranchingFactor;
+
+    void fill(SearchStats stats) {
+        depth = stats.depth();
+        nodes = stats.nodes();
+        qnodes = stats.qnodes();
+        ttProbes = stats.ttProbes();
+        ttHits = stats.ttHits();
+        betaCutoffs = stats.betaCutoffs();
+        firstMoveCutoffs = stats.firstMoveCutoffs();
+        effectiveBranchingFactor = stats.effectiveBranchingFactor();
+    }
+}
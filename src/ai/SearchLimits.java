@@ -0,0 +1,74 @@
+package ai;
+
+/**
+ * Limits for one search: a depth cap and optional deadlines.
+ * The soft deadline is checked between iterations, the hard deadline stops the search mid-iteration.
+ * Deadlines are System.nanoTime() values taken when the limits are created.
+ */
+public final class SearchLimits {
+    public static final int MAX_DEPTH = 64;
+
+    private static final int MOVES_TO_GO = 30;       // Assumed moves left when the clock has no move counter
+    private static final long MIN_RESERVE_MS = 300;  // Kept back for UI latency and the clock's 1 s granularity
+    private static final long MIN_THINK_MS = 20;
+
+    public final int maxDepth;
+    public final long startTime;
+    public final long softDeadline;
+    public final long hardDeadline;
+
+    private SearchLimits(int maxDepth, long startTime, long softDeadline, long hardDeadline) {
+        this.maxDepth = maxDepth;
+        this.startTime = startTime;
+        this.softDeadline = softDeadline;
+        this.hardDeadline = hardDeadline;
+    }
+
+    /**
+     * Searches to a fixed depth with no time limit.
+     */
+    public static SearchLimits depth(int maxDepth) {
+        return new SearchLimits(Math.min(maxDepth, MAX_DEPTH), System.nanoTime(), Long.MAX_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Budgets time from the side's remaining clock: about 1/30 of it per move as the soft limit,
+     * and at most four times that (and never more than a quarter of the clock) as the hard limit.
+     */
+    public static SearchLimits forClock(long remainingMillis, long incrementMillis) {
+        long reserve = Math.max(MIN_RESERVE_MS, remainingMillis / 20);
+        long available = Math.max(MIN_THINK_MS, remainingMillis - reserve);
+        long soft = available / MOVES_TO_GO + incrementMillis * 3 / 4;
+        long hard = Math.min(available / 4, soft * 4);
+        hard = Math.max(hard, MIN_THINK_MS);
+        soft = Math.max(MIN_THINK_MS, Math.min(soft, hard));
+        long now = System.nanoTime();
+        return new SearchLimits(MAX_DEPTH, now, now + soft * 1_000_000L, now + hard * 1_000_000L);
+    }
+
+    /**
+     * The same limits with the soft budget counted from an earlier start, for a ponder hit: time already spent
+     * pondering on the expected reply counts towards it. The hard deadline is kept, so the clock is never overdrawn.
+     */
+    SearchLimits countedFrom(long earlierStart) {
+        if (!isTimed()) return this;
+        return new SearchLimits(maxDepth, earlierStart, earlierStart + (softDeadline - startTime), hardDeadline);
+    }
+
+    public boolean isTimed() {
+        return hardDeadline != Long.MAX_VALUE;
+    }
+
+    /**
+     * Whether another iteration is worth starting. Each depth takes several times longer than the last,
+     * so one started after half the soft budget would most likely be cut off by the hard deadline.
+     */
+    boolean canStartIteration(long now) {
+        if (!isTimed()) return true;
+        return now - startTime < (softDeadline - startTime) / 2;
+    }
+
+    boolean isHardDeadlinePassed(long now) {
+        return now >= hardDeadline;
+    }
+}
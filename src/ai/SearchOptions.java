@@ -0,0 +1,19 @@
+package ai;
+
+/**
+ * Switches for the selective parts of the search, so that each can be turned off to measure its effect
+ * on node counts and playing strength. All are on by default.
+ */
+public final class SearchOptions {
+    public boolean nullMovePruning = true;
+    public boolean lateMoveReductions = true;
+    public boolean futilityPruning = true; // Covers both futility and reverse futility pruning
+
+    public SearchOptions copy() {
+        SearchOptions copy = new SearchOptions();
+        copy.nullMovePruning = nullMovePruning;
+        copy.lateMoveReductions = lateMoveReductions;
+        copy.futilityPruning = futilityPruning;
+        return copy;
+    }
+}
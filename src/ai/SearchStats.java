@@ -0,0 +1,70 @@
+package ai;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters for one search, shared by all of its workers. LongAdder keeps a cell per contending thread, so
+ * Lazy SMP helpers can count every node without fighting over one cache line; the sums are read at the end.
+ * The effective branching factor comes from the main worker's node counts per iteration.
+ */
+public final class SearchStats {
+    final LongAdder nodes = new LongAdder();
+    final LongAdder qnodes = new LongAdder();
+    final LongAdder ttProbes = new LongAdder();
+    final LongAdder ttHits = new LongAdder();
+    final LongAdder betaCutoffs = new LongAdder();
+    final LongAdder firstMoveCutoffs = new LongAdder();
+
+    // Written by the main worker only
+    private volatile int depth;
+    private volatile long lastIterationNodes, previousIterationNodes, earlierIterationNodes;
+    private long mainNodesBefore;
+
+    void completeIteration(int depth, long mainNodes) {
+        earlierIterationNodes = previousIterationNodes;
+        previousIterationNodes = lastIterationNodes;
+        lastIterationNodes = mainNodes - mainNodesBefore;
+        mainNodesBefore = mainNodes;
+        this.depth = depth;
+    }
+
+    public int depth() { return depth; }
+    public long nodes() { return nodes.sum(); }
+    public long qnodes() { return qnodes.sum(); }
+    public long ttProbes() { return ttProbes.sum(); }
+    public long ttHits() { return ttHits.sum(); }
+    public long betaCutoffs() { return betaCutoffs.sum(); }
+    public long firstMoveCutoffs() { return firstMoveCutoffs.sum(); }
+
+    public double ttHitRate() {
+        return ratio(ttHits(), ttProbes());
+    }
+
+    /**
+     * Share of beta cutoffs produced by the first move searched, the usual measure of move ordering quality.
+     */
+    public double firstMoveCutoffRate() {
+        return ratio(firstMoveCutoffs(), betaCutoffs());
+    }
+
+    /**
+     * Growth in nodes per ply over the last two completed iterations, or 0 before three iterations.
+     * Measuring over two plies evens out the odd-even swing of alpha-beta tree sizes.
+     */
+    public double effectiveBranchingFactor() {
+        long earlier = earlierIterationNodes;
+        return earlier == 0 ? 0 : Math.sqrt((double) lastIterationNodes / earlier);
+    }
+
+    private static double ratio(long part, long whole) {
+        return whole == 0 ? 0 : (double) part / whole;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("depth %d, %d nodes (%d quiescence), TT hits %.1f%% of %d probes, "
+                        + "%d beta cutoffs (%.1f%% on first move), EBF %.2f",
+                depth(), nodes(), qnodes(), 100 * ttHitRate(), ttProbes(), betaCutoffs(),
+                100 * firstMoveCutoffRate(), effectiveBranchingFactor());
+    }
+}
@@ -0,0 +1,495 @@
+package ai;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static ai.Position.*;
+
+/**
+ * The state of one search thread. ChessAI runs a main worker on the calling thread and, with more than one
+ * thread configured, Lazy SMP helpers that search the same root on private position copies.
+ * Workers share nothing but the transposition table and the stop flag. ChessAI keeps its workers from one
+ * search to the next and prepares them with reset(), so their buffers are allocated once, not per move.
+ */
+class SearchWorker implements Runnable {
+    private static final int TIME_CHECK_INTERVAL = 2048; // Nodes between clock reads, a power of two
+    // A capture that cannot lift the static score to alpha even with this much positional gain is skipped
+    private static final int DELTA_MARGIN = 2 * ChessAI.PIECE_VALUES[PAWN];
+    static final int MAX_PLY = 128; // Deepest ply reachable from the root, quiescence included
+
+    // Quiet move ordering: the history table is halved whenever an entry reaches this
+    private static final int HISTORY_LIMIT = 1 << 20;
+
+    // Aspiration windows start this far either side of the previous score and double on each failure
+    private static final int ASPIRATION_DELTA = ChessAI.PIECE_VALUES[PAWN];
+    private static final int ASPIRATION_MIN_DEPTH = 4;
+    private static final int ASPIRATION_MAX_DELTA = 16 * ChessAI.PIECE_VALUES[PAWN];
+
+    // Selective search
+    private static final int NULL_MOVE_MIN_DEPTH = 3;
+    private static final int LMR_MIN_DEPTH = 3;
+    private static final int LMR_MIN_MOVE = 3;  // Moves searched at full depth before reductions start
+    private static final int FUTILITY_MAX_DEPTH = 3;
+    private static final int[] FUTILITY_MARGIN = {0, 2 * ChessAI.PIECE_VALUES[PAWN], 3 * ChessAI.PIECE_VALUES[PAWN], 5 * ChessAI.PIECE_VALUES[PAWN]};
+
+    private final int id;
+    private final TranspositionTable transpositionTable;
+    private Position position;
+    private AtomicBoolean stop;
+    private volatile SearchLimits limits; // Replaced on a ponder hit
+    private SearchOptions options;
+    private Tablebase tablebase; // Null when no tables are loaded
+    private SearchStats stats; // Shared with the other workers of the search
+
+    // Ordering state, private to the worker so that helpers never contend on it
+    private final int[][] killers = new int[MAX_PLY][2];
+    private final int[][][] history = new int[2][64][64]; // Butterfly table indexed by side, from and to
+    private final int[][] moveScores = new int[MAX_PLY][256];
+    private final MoveList[] captureLists = new MoveList[MAX_PLY]; // Quiescence moves, one list per ply
+    private final MovePicker[] pickers = new MovePicker[MAX_PLY];
+    private final boolean[] nullMovePlayed = new boolean[MAX_PLY]; // Never two null moves in a row
+    final PawnHashTable pawnTable; // Owned by ChessAI, which keeps it across searches
+    private final int[] seeGains = new int[StaticExchange.MAX_EXCHANGES];
+    private int rootMove = MoveGenerator.NO_MOVE; // Best move of the last root search, which only returns the score
+
+    long nodes;
+    int completedDepth;
+    int bestMove = MoveGenerator.NO_MOVE;
+    int bestScore;
+
+    /**
+     * A worker to be kept across searches; reset() gives it each new root.
+     */
+    SearchWorker(int id, TranspositionTable transpositionTable, PawnHashTable pawnTable) {
+        this.id = id;
+        this.transpositionTable = transpositionTable;
+        this.pawnTable = pawnTable;
+        // Everything the search needs per ply is allocated here, so the search itself allocates nothing
+        for (int ply = 0; ply < MAX_PLY; ply++) {
+            pickers[ply] = new MovePicker();
+            captureLists[ply] = new MoveList(MoveList.MAX_MOVES);
+        }
+    }
+
+    /**
+     * A worker ready to search one root, as reset() leaves it.
+     */
+    SearchWorker(int id, Position root, TranspositionTable transpositionTable, AtomicBoolean stop, SearchLimits limits,
+                 SearchOptions options, Tablebase tablebase, SearchStats stats) {
+        this(id, transpositionTable, new PawnHashTable(PawnHashTable.DEFAULT_ENTRIES));
+        reset(root, stop, limits, options, tablebase, stats);
+    }
+
+    /**
+     * Prepares the worker to search a new root. Only the main worker (id 0) honours the limits; helpers keep
+     * deepening until the main worker stops them. Killers belong to plies of the old root and are cleared;
+     * history still orders the new position's moves well, so it is only aged.
+     */
+    void reset(Position root, AtomicBoolean stop, SearchLimits limits, SearchOptions options, Tablebase tablebase,
+               SearchStats stats) {
+        this.position = root.copy();
+        this.stop = stop;
+        this.limits = limits;
+        this.options = options;
+        this.tablebase = tablebase;
+        this.stats = stats;
+        nodes = 0;
+        completedDepth = 0;
+        bestMove = MoveGenerator.NO_MOVE;
+        bestScore = 0;
+        rootMove = MoveGenerator.NO_MOVE;
+        pawnTable.resetCounters();
+        for (int[] plyKillers : killers) Arrays.fill(plyKillers, MoveGenerator.NO_MOVE);
+        Arrays.fill(nullMovePlayed, false);
+        halveHistory();
+    }
+
+    /**
+     * Iterative deepening. Odd helpers start one ply deeper so that threads spread over
+     * different depths and fill the shared table for each other.
+     */
+    @Override
+    public void run() {
+        for (int depth = 1 + (id & 1); depth <= (isMain() ? limits.maxDepth : SearchLimits.MAX_DEPTH); depth++) {
+            int score = aspirationSearch(depth);
+            if (stop.get()) break; // The interrupted iteration is incomplete, keep the previous result
+            if (rootMove != MoveGenerator.NO_MOVE) {
+                bestMove = rootMove;
+                bestScore = score;
+            }
+            completedDepth = depth;
+
+            if (isMain()) {
+                stats.completeIteration(depth, nodes);
+                if (Math.abs(bestScore) >= ChessAI.MATE_BOUND) break; // A forced mate will not get better
+                if (!limits.canStartIteration(System.nanoTime())) break;
+            }
+        }
+    }
+
+    SearchOptions options() {
+        return options;
+    }
+
+    Tablebase tablebase() {
+        return tablebase;
+    }
+
+    SearchStats stats() {
+        return stats;
+    }
+
+    /**
+     * Switches the limits of a running search, as when a ponder search turns into the real one.
+     */
+    void setLimits(SearchLimits limits) {
+        this.limits = limits;
+    }
+
+    /**
+     * Searches the root in a narrow window around the previous iteration's score, widening on the failing
+     * side and searching again until the score falls inside. Shallow depths and mate scores use the full window.
+     */
+    private int aspirationSearch(int depth) {
+        boolean maximizingPlayer = position.sideToMove() == WHITE;
+        if (depth < ASPIRATION_MIN_DEPTH || completedDepth == 0 || Math.abs(bestScore) >= ChessAI.MATE_BOUND) {
+            return minimax(depth, 0, Integer.MIN_VALUE, Integer.MAX_VALUE, maximizingPlayer);
+        }
+
+        int delta = ASPIRATION_DELTA;
+        int alpha = bestScore - delta, beta = bestScore + delta;
+        while (true) {
+            int score = minimax(depth, 0, alpha, beta, maximizingPlayer);
+            if (stop.get()) return score;
+            if (score <= alpha) {
+                delta *= 2;
+                alpha = delta > ASPIRATION_MAX_DELTA ? Integer.MIN_VALUE : score - delta;
+            } else if (score >= beta) {
+                delta *= 2;
+                beta = delta > ASPIRATION_MAX_DELTA ? Integer.MAX_VALUE : score + delta;
+            } else {
+                return score;
+            }
+        }
+    }
+
+    private boolean isMain() {
+        return id == 0;
+    }
+
+    // Counts the node and reports whether the search has been stopped, reading the clock every few thousand nodes
+    private boolean shouldStop() {
+        if (stop.get()) return true;
+        stats.nodes.increment();
+        if ((++nodes & (TIME_CHECK_INTERVAL - 1)) == 0 && isMain() && limits.isHardDeadlinePassed(System.nanoTime())) {
+            stop.set(true);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the score of the position; at the root the move that produced it is left in rootMove.
+     * A stopped search returns 0, which callers discard after checking the stop flag.
+     */
+    private int minimax(int depth, int ply, int alpha, int beta, boolean maximizingPlayer) {
+        if (shouldStop()) return 0;
+        if (ply == 0) rootMove = MoveGenerator.NO_MOVE;
+
+        long hash = position.hash();
+        long ttEntry = transpositionTable.probe(hash);
+        stats.ttProbes.increment();
+        if (ttEntry != 0) stats.ttHits.increment();
+        int ttMove = ttEntry != 0 ? TranspositionTable.move(ttEntry) : MoveGenerator.NO_MOVE;
+
+        if (ttEntry != 0 && TranspositionTable.depth(ttEntry) >= depth) {
+            int ttScore = scoreFromTable(TranspositionTable.score(ttEntry), ply);
+            int cutoff = switch (TranspositionTable.flag(ttEntry)) {
+                case TranspositionTable.EXACT -> ttScore;
+                case TranspositionTable.UPPERBOUND -> ttScore <= alpha ? alpha : Integer.MIN_VALUE;
+                case TranspositionTable.LOWERBOUND -> ttScore >= beta ? beta : Integer.MIN_VALUE;
+                default -> Integer.MIN_VALUE;
+            };
+            if (cutoff != Integer.MIN_VALUE) {
+                if (ply == 0) rootMove = ttMove;
+                return cutoff;
+            }
+        }
+
+        if (tablebase != null && ply > 0) {
+            // Exact result from the endgame tables, with no need to search further
+            int score = tablebase.score(position, ply);
+            if (score != Integer.MIN_VALUE) return score;
+        }
+
+        if (depth == 0) {
+            return quiescence(ply, alpha, beta, maximizingPlayer);
+        }
+
+        int color = position.sideToMove();
+        boolean inCheck = position.isInCheck(color);
+        boolean pvNode = (long) beta - alpha > 1;
+        boolean selective = !pvNode && !inCheck && ply > 0;
+        int staticEval = selective ? ChessAI.evaluateBoard(position, pawnTable) : 0;
+
+        if (selective && options.futilityPruning && depth <= FUTILITY_MAX_DEPTH && Math.abs(beta) < ChessAI.MATE_BOUND) {
+            // Reverse futility: the static score beats the bound by more than the opponent could plausibly win back
+            int margin = FUTILITY_MARGIN[depth];
+            if (maximizingPlayer ? staticEval - margin >= beta : staticEval + margin <= alpha) {
+                return staticEval;
+            }
+        }
+
+        if (selective && options.nullMovePruning && depth >= NULL_MOVE_MIN_DEPTH && !nullMovePlayed[ply - 1]
+                && position.hasNonPawnMaterial(color)
+                && (maximizingPlayer ? staticEval >= beta : staticEval <= alpha)) {
+            // Null move: if passing still fails high at reduced depth, a real move would too
+            int reduction = depth > 6 ? 3 : 2;
+            position.makeNullMove();
+            nullMovePlayed[ply] = true;
+            int eval = maximizingPlayer
+                    ? minimax(depth - 1 - reduction, ply + 1, beta - 1, beta, false)
+                    : minimax(depth - 1 - reduction, ply + 1, alpha, alpha + 1, true);
+            nullMovePlayed[ply] = false;
+            position.unmakeNullMove();
+            if (stop.get()) return 0;
+            // Fail hard: a mate found after passing proves nothing about the real moves
+            if (maximizingPlayer ? eval >= beta : eval <= alpha) {
+                return maximizingPlayer ? beta : alpha;
+            }
+        }
+
+        MovePicker picker = pickers[ply];
+        picker.init(position, ttMove, killers[ply][0], killers[ply][1], history[color]);
+
+        // Futility: near the leaves, quiet moves cannot lift a hopeless static score to the bound
+        boolean futile = selective && options.futilityPruning && depth <= FUTILITY_MAX_DEPTH
+                && (maximizingPlayer ? staticEval + FUTILITY_MARGIN[depth] <= alpha : staticEval - FUTILITY_MARGIN[depth] >= beta);
+
+        int bestMove = MoveGenerator.NO_MOVE;
+        int bestScore = maximizingPlayer ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+        int alphaOrig = alpha, betaOrig = beta;
+
+        int i = 0; // Legal moves tried so far
+        for (int move = picker.next(); move != MoveGenerator.NO_MOVE; move = picker.next()) {
+            boolean quiet = isQuiet(move);
+            boolean killer = move == killers[ply][0] || move == killers[ply][1];
+            position.makeMove(move);
+            if (position.isInCheck(color)) { // Pseudo-legal only: the king was left in check
+                position.unmakeMove(move);
+                continue;
+            }
+            boolean givesCheck = position.isInCheck(position.sideToMove());
+
+            if (futile && i > 0 && quiet && !givesCheck) {
+                position.unmakeMove(move);
+                i++;
+                continue;
+            }
+
+            int eval;
+            if (i == 0) {
+                eval = minimax(depth - 1, ply + 1, alpha, beta, !maximizingPlayer);
+            } else {
+                // Late move reductions: quiet moves this far down the ordering rarely matter, so they
+                // are searched shallower first and only at full depth if they turn out to beat the best so far
+                int reduction = 0;
+                if (options.lateMoveReductions && i >= LMR_MIN_MOVE && depth >= LMR_MIN_DEPTH
+                        && quiet && !killer && !inCheck && !givesCheck) {
+                    reduction = i >= 2 * LMR_MIN_MOVE && depth >= 6 ? 2 : 1;
+                }
+                // Principal variation search: later moves only have to be proven no better than the
+                // best so far, which a null window does cheaply. The rare move that beats it is searched again.
+                if (maximizingPlayer) {
+                    eval = minimax(depth - 1 - reduction, ply + 1, alpha, alpha + 1, false);
+                    if (reduction > 0 && eval > alpha && !stop.get()) eval = minimax(depth - 1, ply + 1, alpha, alpha + 1, false);
+                    if (eval > alpha && eval < beta && !stop.get()) eval = minimax(depth - 1, ply + 1, alpha, beta, false);
+                } else {
+                    eval = minimax(depth - 1 - reduction, ply + 1, beta - 1, beta, true);
+                    if (reduction > 0 && eval < beta && !stop.get()) eval = minimax(depth - 1, ply + 1, beta - 1, beta, true);
+                    if (eval < beta && eval > alpha && !stop.get()) eval = minimax(depth - 1, ply + 1, alpha, beta, true);
+                }
+            }
+            position.unmakeMove(move);
+            i++;
+            if (stop.get()) return 0;
+
+            if (maximizingPlayer) {
+                if (eval > bestScore) {
+                    bestScore = eval;
+                    bestMove = move;
+                }
+                alpha = Math.max(alpha, bestScore);
+            } else {
+                if (eval < bestScore) {
+                    bestScore = eval;
+                    bestMove = move;
+                }
+                beta = Math.min(beta, bestScore);
+            }
+            if (beta <= alpha) {
+                stats.betaCutoffs.increment();
+                if (i == 1) stats.firstMoveCutoffs.increment();
+                if (quiet) recordCutoff(move, depth, ply);
+                break;
+            }
+        }
+
+        if (i == 0) {
+            // No legal move. Checkmate scores prefer the shortest mate (fewest plies from the root); stalemate is a draw
+            if (!inCheck) return 0;
+            return maximizingPlayer ? -ChessAI.MATE_SCORE + ply : ChessAI.MATE_SCORE - ply;
+        }
+
+        // Store TT entry
+        int flag = TranspositionTable.EXACT;
+        if (bestScore <= alphaOrig) flag = TranspositionTable.UPPERBOUND;
+        else if (bestScore >= betaOrig) flag = TranspositionTable.LOWERBOUND;
+
+        transpositionTable.store(hash, depth, scoreToTable(bestScore, ply), flag, bestMove);
+        if (ply == 0) rootMove = bestMove;
+        return bestScore;
+    }
+
+    /**
+     * Resolves captures at the horizon so that leaves are only evaluated in quiet positions.
+     * The side to move may stand pat on the static evaluation unless in check; captures that lose
+     * material by SEE, or cannot reach alpha even counting the captured piece, are pruned.
+     */
+    private int quiescence(int ply, int alpha, int beta, boolean maximizingPlayer) {
+        if (shouldStop()) return 0;
+        stats.qnodes.increment();
+
+        int color = position.sideToMove();
+        boolean inCheck = position.isInCheck(color);
+        int standPat = ChessAI.evaluateBoard(position, pawnTable);
+        if (ply >= MAX_PLY - 1) return standPat;
+        int bestScore;
+        MoveList moves = captureLists[ply];
+        moves.clear();
+
+        if (inCheck) {
+            // No standing pat in check: every evasion is searched, and having none is mate
+            MoveGenerator.generatePseudoLegalMoves(position, moves);
+            bestScore = maximizingPlayer ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+        } else {
+            if (maximizingPlayer) {
+                if (standPat >= beta) return standPat;
+                alpha = Math.max(alpha, standPat);
+            } else {
+                if (standPat <= alpha) return standPat;
+                beta = Math.min(beta, standPat);
+            }
+            bestScore = standPat;
+            MoveGenerator.generateCaptures(position, moves);
+        }
+        sortCaptures(moves, ply);
+
+        int legalMoves = 0;
+        for (int i = 0; i < moves.size(); i++) {
+            int move = moves.get(i);
+            if (!inCheck) {
+                boolean promotion = MoveGenerator.flag(move) == MoveGenerator.PROMOTION;
+                if (promotion && MoveGenerator.promotion(move) != QUEEN) continue;
+                if (!promotion) {
+                    // Delta pruning: even winning the piece outright would not change the bound
+                    int gain = capturedValue(move) + DELTA_MARGIN;
+                    if (maximizingPlayer ? standPat + gain <= alpha : standPat - gain >= beta) continue;
+                    if (StaticExchange.see(position, move, seeGains) < 0) continue;
+                }
+            }
+
+            position.makeMove(move);
+            if (position.isInCheck(color)) {
+                position.unmakeMove(move);
+                continue;
+            }
+            legalMoves++;
+            int eval = quiescence(ply + 1, alpha, beta, !maximizingPlayer);
+            position.unmakeMove(move);
+            if (stop.get()) return 0;
+
+            if (maximizingPlayer) {
+                bestScore = Math.max(bestScore, eval);
+                alpha = Math.max(alpha, bestScore);
+            } else {
+                bestScore = Math.min(bestScore, eval);
+                beta = Math.min(beta, bestScore);
+            }
+            if (beta <= alpha) break;
+        }
+        if (inCheck && legalMoves == 0) return maximizingPlayer ? -ChessAI.MATE_SCORE + ply : ChessAI.MATE_SCORE - ply;
+        return bestScore;
+    }
+
+    // A win counted from the root becomes one counted from the position ply plies deep, so that the entry
+    // means the same wherever in the tree, or in a later search, the position is reached again
+    static int scoreToTable(int score, int ply) {
+        if (score >= ChessAI.WIN_BOUND) return score + ply;
+        if (score <= -ChessAI.WIN_BOUND) return score - ply;
+        return score;
+    }
+
+    static int scoreFromTable(int score, int ply) {
+        if (score >= ChessAI.WIN_BOUND) return score - ply;
+        if (score <= -ChessAI.WIN_BOUND) return score + ply;
+        return score;
+    }
+
+    private int capturedValue(int move) {
+        return MovePicker.capturedValue(position, move);
+    }
+
+    private boolean isQuiet(int move) {
+        return isQuiet(position, move);
+    }
+
+    static boolean isQuiet(Position position, int move) {
+        int flag = MoveGenerator.flag(move);
+        return flag != MoveGenerator.PROMOTION && flag != MoveGenerator.EN_PASSANT
+                && position.pieceAt(MoveGenerator.to(move)) == NO_PIECE;
+    }
+
+    private void sortCaptures(MoveList moves, int ply) {
+        int[] scores = moveScores[ply];
+        for (int i = 0; i < moves.size(); i++) scores[i] = MovePicker.mvvLva(position, moves.get(i));
+        insertionSort(moves, scores);
+    }
+
+    // Insertion sort, descending by score; move lists are short
+    private static void insertionSort(MoveList moves, int[] scores) {
+        for (int i = 1; i < moves.size(); i++) {
+            int move = moves.get(i), score = scores[i];
+            int j = i - 1;
+            while (j >= 0 && scores[j] < score) {
+                moves.set(j + 1, moves.get(j));
+                scores[j + 1] = scores[j];
+                j--;
+            }
+            moves.set(j + 1, move);
+            scores[j + 1] = score;
+        }
+    }
+
+    // A quiet move that caused a beta cutoff becomes a killer for its ply and gains history, weighted by depth
+    private void recordCutoff(int move, int depth, int ply) {
+        int[] plyKillers = killers[ply];
+        if (plyKillers[0] != move) {
+            plyKillers[1] = plyKillers[0];
+            plyKillers[0] = move;
+        }
+        int[][] sideHistory = history[position.sideToMove()];
+        int from = MoveGenerator.from(move), to = MoveGenerator.to(move);
+        sideHistory[from][to] += depth * depth;
+        if (sideHistory[from][to] >= HISTORY_LIMIT) halveHistory();
+    }
+
+    // Old cutoffs fade and scores stay bounded
+    private void halveHistory() {
+        for (int[][] side : history) {
+            for (int[] row : side) {
+                for (int i = 0; i < row.length; i++) row[i] >>= 1;
+            }
+        }
+    }
+}
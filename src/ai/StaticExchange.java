@@ -0,0 +1,82 @@
+package ai;
+
+import static ai.Position.*;
+
+/**
+ * Static exchange evaluation: the material balance of the capture sequence on one square,
+ * with both sides always recapturing with their least valuable attacker and free to stop.
+ */
+public final class StaticExchange {
+    // Exchange values in centipawns, the nominal piece values the evaluation and the pruning margins use;
+    // the king can only ever make the last capture
+    private static final int[] SEE_VALUES = ChessAI.PIECE_VALUES;
+    // Captures in one exchange can never outnumber the pieces on the board
+    static final int MAX_EXCHANGES = 33;
+
+    private StaticExchange() {
+    }
+
+    /**
+     * Returns what the side to move wins (positive) or loses (negative), in centipawns, by playing the capture
+     * and letting the exchange on the destination square run. Non-captures score 0 unless the moved piece can be taken.
+     */
+    public static int see(Position pos, int move) {
+        return see(pos, move, new int[MAX_EXCHANGES]);
+    }
+
+    /**
+     * As above, keeping the speculative gains in the caller's scratch array of MAX_EXCHANGES entries
+     * so that the search does not allocate one per capture.
+     */
+    static int see(Position pos, int move, int[] gain) {
+        int from = MoveGenerator.from(move), to = MoveGenerator.to(move);
+        int flag = MoveGenerator.flag(move);
+        int depth = 0;
+
+        long occupied = pos.occupied();
+        int targetPiece = pos.pieceAt(to);
+        gain[0] = flag == MoveGenerator.EN_PASSANT ? SEE_VALUES[PAWN]
+                : targetPiece == NO_PIECE ? 0 : SEE_VALUES[targetPiece % 6];
+        if (flag == MoveGenerator.EN_PASSANT) {
+            occupied ^= 1L << (pos.sideToMove() == WHITE ? to + 8 : to - 8);
+        }
+
+        int attackerType = pos.pieceAt(from) % 6;
+        int side = pos.sideToMove();
+        long fromBit = 1L << from;
+        long attackers = pos.attackersTo(to, occupied);
+        long diagonalSliders = pos.pieces(WHITE, BISHOP) | pos.pieces(BLACK, BISHOP) | pos.pieces(WHITE, QUEEN) | pos.pieces(BLACK, QUEEN);
+        long straightSliders = pos.pieces(WHITE, ROOK) | pos.pieces(BLACK, ROOK) | pos.pieces(WHITE, QUEEN) | pos.pieces(BLACK, QUEEN);
+
+        while (true) {
+            depth++;
+            // Speculative score if the piece that just captured is taken in turn
+            gain[depth] = SEE_VALUES[attackerType] - gain[depth - 1];
+            if (Math.max(-gain[depth - 1], gain[depth]) < 0) break; // Neither side wants to continue
+
+            occupied ^= fromBit;
+            attackers &= occupied;
+            // Removing the capturer may open a slider behind it
+            attackers |= (Bitboards.bishopAttacks(to, occupied) & diagonalSliders & occupied)
+                    | (Bitboards.rookAttacks(to, occupied) & straightSliders & occupied);
+
+            side ^= 1;
+            long sideAttackers = attackers & pos.occupancy(side);
+            if (sideAttackers == 0) break;
+            attackerType = leastValuableType(pos, sideAttackers, side);
+            fromBit = Long.lowestOneBit(sideAttackers & pos.pieces(side, attackerType));
+            if (attackerType == KING && (attackers & pos.occupancy(side ^ 1)) != 0) break; // King cannot capture into check
+        }
+        while (--depth > 0) {
+            gain[depth - 1] = -Math.max(-gain[depth - 1], gain[depth]);
+        }
+        return gain[0];
+    }
+
+    private static int leastValuableType(Position pos, long attackers, int side) {
+        for (int type = PAWN; type <= KING; type++) {
+            if ((attackers & pos.pieces(side, type)) != 0) return type;
+        }
+        return KING;
+    }
+}
@@ -0,0 +1,372 @@
+package ai;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static ai.Position.*;
+
+/**
+ * Memory-mapped endgame tablebases written by TablebaseGenerator, for positions with up to four pieces.
+ * Each material signature (such as KRvK) has a DTM file holding one byte per position, and a WDL file
+ * holding two bits per position. Probing needs no heap copy of the tables.
+ * <p>
+ * A table is indexed by the side to move and the square of each piece in signature order, with white as the
+ * stronger side; positions where black is stronger are probed with the colors swapped and the board mirrored.
+ * Castling rights and en passant are not part of the index, so positions where either is possible are not covered.
+ * <p>
+ * Tables are found by a material key packed from the piece counts, under which each table is listed for both
+ * color assignments, so a probe inside the search builds no signature string and allocates nothing.
+ */
+public final class Tablebase {
+    public static final int MAX_PIECES = 4;
+
+    // DTM codes, in plies: 1..127 the side to move mates in n, 128 + n the side to move is mated in n
+    public static final int DRAW = 0, LOSS = 128, ILLEGAL = 255;
+    public static final int MAX_DISTANCE = 126;
+
+    static final int MAGIC = 0x43485442; // "CHTB"
+    static final int FORMAT_DTM = 1, FORMAT_WDL = 2;
+    static final int HEADER_BYTES = 16;
+    static final String DTM_SUFFIX = ".dtm", WDL_SUFFIX = ".wdl";
+    static final int WDL_DRAW = 0, WDL_WIN = 1, WDL_LOSS = 2, WDL_ILLEGAL = 3;
+
+    private static final String PIECE_LETTERS = "PNBRQK"; // Indexed by engine piece type
+    private static final int[] SIGNATURE_ORDER = {KING, QUEEN, ROOK, BISHOP, KNIGHT, PAWN};
+    // Decides which side is stored as white; fixed here because file names depend on it
+    private static final int[] SIDE_VALUES = {1, 3, 3, 5, 9, 0};
+    // Scores for tablebase results sit below real mates found by the search, shorter wins scoring higher
+    private static final int WIN_SCORE = ChessAI.MATE_SCORE / 2;
+
+    private static final int NO_KEY = -1;
+
+    // Open addressing by material key, kept at most half full. Each slot tells whether the position is read
+    // with the colors swapped to match the table
+    private int[] slotKeys = emptySlots(16);
+    private Table[] slotTables = new Table[16];
+    private boolean[] slotFlipped = new boolean[16];
+    private int slotCount;
+    private int maxPieces;
+
+    private Tablebase() {
+    }
+
+    /**
+     * Maps every table file in the directory. The mappings stay valid after the channels are closed.
+     */
+    public static Tablebase open(Path directory) throws IOException {
+        Map<String, Table> tables = new HashMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.{dtm,wdl}")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                boolean dtm = name.endsWith(DTM_SUFFIX);
+                String signature = name.substring(0, name.length() - DTM_SUFFIX.length());
+                Table table = tables.computeIfAbsent(signature, Table::new);
+                if (dtm) table.dtm = map(file, FORMAT_DTM);
+                else table.wdl = map(file, FORMAT_WDL);
+            }
+        }
+        Tablebase tablebase = new Tablebase();
+        for (Table table : tables.values()) {
+            int key = materialKey(table.types, table.colors, false), flippedKey = materialKey(table.types, table.colors, true);
+            tablebase.add(key, table, false);
+            if (flippedKey != key) tablebase.add(flippedKey, table, true);
+            tablebase.maxPieces = Math.max(tablebase.maxPieces, table.types.length);
+        }
+        return tablebase;
+    }
+
+    private void add(int key, Table table, boolean flipped) {
+        if (2 * (slotCount + 1) > slotKeys.length) grow();
+        int slot = firstSlot(key);
+        while (slotKeys[slot] != NO_KEY) slot = (slot + 1) & (slotKeys.length - 1);
+        slotKeys[slot] = key;
+        slotTables[slot] = table;
+        slotFlipped[slot] = flipped;
+        slotCount++;
+    }
+
+    private void grow() {
+        int[] keys = slotKeys;
+        Table[] tables = slotTables;
+        boolean[] flipped = slotFlipped;
+        slotKeys = emptySlots(2 * keys.length);
+        slotTables = new Table[2 * keys.length];
+        slotFlipped = new boolean[2 * keys.length];
+        slotCount = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != NO_KEY) add(keys[i], tables[i], flipped[i]);
+        }
+    }
+
+    private static int[] emptySlots(int size) {
+        int[] keys = new int[size];
+        Arrays.fill(keys, NO_KEY);
+        return keys;
+    }
+
+    private int firstSlot(int key) {
+        return (key * 0x9E3779B9 >>> 16) & (slotKeys.length - 1);
+    }
+
+    // The slot of the table for the position's material, or -1 if the position is not covered or has no table
+    private int find(Position position) {
+        if (!covers(position)) return -1;
+        int key = materialKey(position);
+        for (int slot = firstSlot(key); slotKeys[slot] != NO_KEY; slot = (slot + 1) & (slotKeys.length - 1)) {
+            if (slotKeys[slot] == key) return slot;
+        }
+        return -1;
+    }
+
+    private static ByteBuffer map(Path file, int format) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != format) throw new IOException("Not a tablebase file: " + file);
+            return buffer;
+        }
+    }
+
+    public int maxPieces() {
+        return maxPieces;
+    }
+
+    /**
+     * Whether the position is small enough to be in a table and has no castling rights or possible en passant
+     * capture. The table for its material may still be missing.
+     */
+    public boolean covers(Position position) {
+        if (Long.bitCount(position.occupied()) > maxPieces || position.castlingRights() != 0) return false;
+        int ep = position.enPassantSquare(), side = position.sideToMove();
+        return ep < 0 || (Bitboards.PAWN_ATTACKS[side ^ 1][ep] & position.pieces(side, PAWN)) == 0;
+    }
+
+    /**
+     * The DTM code of the position for the side to move, or -1 if no DTM table covers it.
+     */
+    public int probeDtm(Position position) {
+        int slot = find(position);
+        if (slot < 0 || slotTables[slot].dtm == null) return -1;
+        return dtmCode(slotTables[slot], position, slotFlipped[slot]);
+    }
+
+    /**
+     * The WDL value of the position for the side to move (WDL_WIN, WDL_DRAW, WDL_LOSS or WDL_ILLEGAL), or -1 if unknown.
+     */
+    public int probeWdl(Position position) {
+        int slot = find(position);
+        if (slot < 0) return -1;
+        Table table = slotTables[slot];
+        if (table.dtm != null) return toWdl(dtmCode(table, position, slotFlipped[slot]));
+        return table.wdl != null ? wdlValue(table, position, slotFlipped[slot]) : -1;
+    }
+
+    private static int dtmCode(Table table, Position position, boolean flipped) {
+        return table.dtm.get(HEADER_BYTES + index(position, table.types, table.colors, flipped)) & 0xFF;
+    }
+
+    private static int wdlValue(Table table, Position position, boolean flipped) {
+        int index = index(position, table.types, table.colors, flipped);
+        return (table.wdl.get(HEADER_BYTES + (index >>> 2)) >>> ((index & 3) * 2)) & 3;
+    }
+
+    private static int toWdl(int dtm) {
+        return dtm == ILLEGAL ? WDL_ILLEGAL : dtm == DRAW ? WDL_DRAW : isWin(dtm) ? WDL_WIN : WDL_LOSS;
+    }
+
+    /**
+     * A search score from white's point of view for a position ply plies from the root, or
+     * Integer.MIN_VALUE if the position is not in the tables. Wins score below real mates, the
+     * shorter the higher; without a DTM table a win counts as the longest possible one.
+     */
+    public int score(Position position, int ply) {
+        int slot = find(position);
+        if (slot < 0) return Integer.MIN_VALUE;
+        Table table = slotTables[slot];
+        boolean flipped = slotFlipped[slot];
+        int wdl;
+        int distance;
+        if (table.dtm != null) {
+            int dtm = dtmCode(table, position, flipped);
+            if (dtm == ILLEGAL) return Integer.MIN_VALUE;
+            wdl = toWdl(dtm);
+            distance = distance(dtm);
+        } else if (table.wdl != null) {
+            wdl = wdlValue(table, position, flipped);
+            if (wdl == WDL_ILLEGAL) return Integer.MIN_VALUE;
+            distance = MAX_DISTANCE + 1;
+        } else {
+            return Integer.MIN_VALUE;
+        }
+        if (wdl == WDL_DRAW) return 0;
+        int score = WIN_SCORE - ply - distance;
+        if (wdl == WDL_LOSS) score = -score;
+        return position.sideToMove() == WHITE ? score : -score;
+    }
+
+    /**
+     * The move that keeps the best result with the best distance: the fastest win, the longest defence,
+     * or any drawing move. Returns NO_MOVE unless the position and all its successors are in DTM tables.
+     */
+    public int bestMove(Position position) {
+        if (probeDtm(position) < 0) return MoveGenerator.NO_MOVE;
+        MoveList moves = new MoveList();
+        MoveGenerator.generateLegalMoves(position, moves);
+        int bestMove = MoveGenerator.NO_MOVE;
+        int bestRank = Integer.MIN_VALUE;
+        for (int i = 0; i < moves.size(); i++) {
+            int move = moves.get(i);
+            position.makeMove(move);
+            int child = probeDtm(position);
+            position.unmakeMove(move);
+            if (child < 0 || child == ILLEGAL) return MoveGenerator.NO_MOVE;
+            // The child is scored for the opponent: their loss is our win
+            int rank = child == DRAW ? 0 : isWin(child) ? -1000 + distance(child) : 1000 - distance(child);
+            if (rank > bestRank) {
+                bestRank = rank;
+                bestMove = move;
+            }
+        }
+        return bestMove;
+    }
+
+    public static boolean isWin(int dtm) {
+        return dtm > DRAW && dtm < LOSS;
+    }
+
+    public static boolean isLoss(int dtm) {
+        return dtm >= LOSS && dtm != ILLEGAL;
+    }
+
+    public static int distance(int dtm) {
+        return dtm >= LOSS ? dtm - LOSS : dtm;
+    }
+
+    /**
+     * The material signature of the position as it stands, white first: "KRvK", "KvKQ", ...
+     */
+    static String signature(Position position) {
+        StringBuilder sb = new StringBuilder(MAX_PIECES + 1);
+        for (int color = WHITE; color <= BLACK; color++) {
+            if (color == BLACK) sb.append('v');
+            for (int type : SIGNATURE_ORDER) {
+                for (int n = Long.bitCount(position.pieces(color, type)); n > 0; n--) sb.append(PIECE_LETTERS.charAt(type));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The signature with the stronger side as white, which is the form tables are stored under.
+     */
+    static String normalize(String signature) {
+        int v = signature.indexOf('v');
+        String white = signature.substring(0, v), black = signature.substring(v + 1);
+        return compareSides(white, black) >= 0 ? signature : black + "v" + white;
+    }
+
+    private static int compareSides(String a, String b) {
+        int byMaterial = Integer.compare(material(a), material(b));
+        if (byMaterial != 0) return byMaterial;
+        if (a.length() != b.length()) return Integer.compare(a.length(), b.length());
+        return a.compareTo(b);
+    }
+
+    private static int material(String side) {
+        int total = 0;
+        for (int i = 0; i < side.length(); i++) {
+            total += SIDE_VALUES[PIECE_LETTERS.indexOf(side.charAt(i))];
+        }
+        return total;
+    }
+
+    /**
+     * Piece types and colors of a normalized signature, in index order.
+     */
+    static int[] pieceTypes(String signature) {
+        int[] types = new int[signature.length() - 1];
+        for (int i = 0, n = 0; i < signature.length(); i++) {
+            if (signature.charAt(i) != 'v') types[n++] = PIECE_LETTERS.indexOf(signature.charAt(i));
+        }
+        return types;
+    }
+
+    static int[] pieceColors(String signature) {
+        int[] colors = new int[signature.length() - 1];
+        int v = signature.indexOf('v');
+        for (int i = 0; i < colors.length; i++) colors[i] = i < v ? WHITE : BLACK;
+        return colors;
+    }
+
+    /**
+     * The material of the position as piece counts, kings left out, three bits per color and type.
+     * Only meaningful for positions that covers() accepts, where no count can overflow.
+     */
+    static int materialKey(Position position) {
+        int key = 0;
+        for (int color = WHITE; color <= BLACK; color++) {
+            for (int type = PAWN; type < KING; type++) {
+                key |= Long.bitCount(position.pieces(color, type)) << materialShift(color, type);
+            }
+        }
+        return key;
+    }
+
+    // The key of a table's pieces, or with flipped set of the same pieces with the colors swapped
+    private static int materialKey(int[] types, int[] colors, boolean flipped) {
+        int key = 0;
+        for (int i = 0; i < types.length; i++) {
+            if (types[i] != KING) key += 1 << materialShift(flipped ? colors[i] ^ 1 : colors[i], types[i]);
+        }
+        return key;
+    }
+
+    private static int materialShift(int color, int type) {
+        return 3 * (5 * color + type);
+    }
+
+    static int tableSize(int pieceCount) {
+        return 2 << (6 * pieceCount);
+    }
+
+    /**
+     * Index of the position in the table for the normalized signature. With flipped set the position is read
+     * with the colors swapped and the board mirrored top to bottom, so that pawns keep their direction.
+     */
+    static int index(Position position, String signature, boolean flipped) {
+        return index(position, pieceTypes(signature), pieceColors(signature), flipped);
+    }
+
+    private static int index(Position position, int[] types, int[] colors, boolean flipped) {
+        int index = flipped ? position.sideToMove() ^ 1 : position.sideToMove();
+        long used = 0;
+        for (int i = 0; i < types.length; i++) {
+            int color = flipped ? colors[i] ^ 1 : colors[i];
+            // Identical pieces take squares in bitboard order; the table holds every permutation
+            long candidates = position.pieces(color, types[i]) & ~used;
+            int sq = Long.numberOfTrailingZeros(candidates);
+            used |= 1L << sq;
+            index = (index << 6) | (flipped ? sq ^ 56 : sq);
+        }
+        return index;
+    }
+
+    // The DTM and WDL files of one normalized signature, with its pieces in index order
+    private static final class Table {
+        final int[] types, colors;
+        ByteBuffer dtm, wdl; // Either may be missing
+
+        Table(String signature) {
+            this.types = pieceTypes(signature);
+            this.colors = pieceColors(signature);
+        }
+    }
+}
@@ -0,0 +1,379 @@
+package ai;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static ai.Position.*;
+
+/**
+ * Builds the DTM and WDL files read by Tablebase, by retrograde analysis over every placement of the pieces.
+ * <p>
+ * A first pass sets up each position and counts its legal moves. Mates are found directly, and moves that
+ * capture or promote are resolved from the smaller tables they lead to, which are generated first. After
+ * that the tables are built backwards one ply at a time. A position lost in n plies makes every predecessor
+ * won in n + 1. A position won in n plies takes one move off each predecessor's count, and a predecessor
+ * left with no move that avoids losing is lost in n + 1. Predecessors come from un-moving the pieces of the
+ * side that just moved. Every pass is split over index ranges on a fork-join pool.
+ * <p>
+ * Usage: {@code java ai.TablebaseGenerator <directory> [KQvK KRvK ...]}. Without signatures, all 3-piece tables
+ * are built. Four-piece tables have 2 * 64^4 positions and need about 150 MB of heap while building.
+ */
+public final class TablebaseGenerator {
+    private static final String[] DEFAULT_SIGNATURES = {"KQvK", "KRvK", "KBvK", "KNvK", "KPvK"};
+    private static final int SPLIT_THRESHOLD = 1 << 14;
+    private static final VarHandle BYTES = MethodHandles.arrayElementVarHandle(byte[].class);
+
+    private final Path directory;
+    private final ForkJoinPool pool;
+    private final Map<String, byte[]> tables = new HashMap<>(); // Finished DTM tables by signature
+
+    public TablebaseGenerator(Path directory, ForkJoinPool pool) {
+        this.directory = directory;
+        this.pool = pool;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: java ai.TablebaseGenerator <directory> [signature...]");
+            return;
+        }
+        Path directory = Path.of(args[0]);
+        Files.createDirectories(directory);
+        TablebaseGenerator generator = new TablebaseGenerator(directory, ForkJoinPool.commonPool());
+        String[] signatures = args.length > 1 ? Arrays.copyOfRange(args, 1, args.length) : DEFAULT_SIGNATURES;
+        for (String signature : signatures) generator.generate(signature);
+    }
+
+    /**
+     * Builds the table for the signature and every table it depends on, skipping tables whose files already exist.
+     */
+    public void generate(String signature) throws IOException {
+        if (!signature.matches("K[QRBNP]*vK[QRBNP]*") || signature.length() - 1 > Tablebase.MAX_PIECES) {
+            throw new IllegalArgumentException("Unsupported signature: " + signature);
+        }
+        signature = Tablebase.normalize(canonical(signature));
+        if (tables.containsKey(signature)) return;
+        int pieceCount = signature.length() - 1;
+
+        Path dtmFile = directory.resolve(signature + Tablebase.DTM_SUFFIX);
+        if (Files.exists(dtmFile)) {
+            byte[] file = Files.readAllBytes(dtmFile);
+            tables.put(signature, Arrays.copyOfRange(file, Tablebase.HEADER_BYTES, file.length));
+            return;
+        }
+        for (String dependency : dependencies(signature)) generate(dependency);
+
+        long start = System.currentTimeMillis();
+        Build build = new Build(signature);
+        build.run();
+        tables.put(signature, build.dtm);
+        write(dtmFile, Tablebase.FORMAT_DTM, pieceCount, build.dtm);
+        write(directory.resolve(signature + Tablebase.WDL_SUFFIX), Tablebase.FORMAT_WDL, pieceCount, toWdl(build.dtm));
+        System.out.printf("Generated %s in %dms: %d wins, %d losses, longest mate %d plies%n",
+                signature, System.currentTimeMillis() - start, build.count(true), build.count(false), build.longest);
+    }
+
+    // Tables reached by one capture or promotion
+    private static Set<String> dependencies(String signature) {
+        Set<String> result = new LinkedHashSet<>();
+        for (int i = 0; i < signature.length(); i++) {
+            char c = signature.charAt(i);
+            if (c == 'v' || c == 'K') continue;
+            String without = signature.substring(0, i) + signature.substring(i + 1);
+            result.add(Tablebase.normalize(canonical(without)));
+            if (c == 'P') {
+                for (char promoted : new char[]{'Q', 'R', 'B', 'N'}) {
+                    result.add(Tablebase.normalize(canonical(signature.substring(0, i) + promoted + signature.substring(i + 1))));
+                }
+            }
+        }
+        return result;
+    }
+
+    // Re-sorts each side's letters into signature order (K, Q, R, B, N, P)
+    private static String canonical(String signature) {
+        int v = signature.indexOf('v');
+        return sortSide(signature.substring(0, v)) + "v" + sortSide(signature.substring(v + 1));
+    }
+
+    private static String sortSide(String side) {
+        StringBuilder sb = new StringBuilder();
+        for (char letter : "KQRBNP".toCharArray()) {
+            for (int i = 0; i < side.length(); i++) if (side.charAt(i) == letter) sb.append(letter);
+        }
+        return sb.toString();
+    }
+
+    private int lookup(Position position) {
+        String raw = Tablebase.signature(position);
+        String signature = Tablebase.normalize(raw);
+        byte[] table = tables.get(signature);
+        if (table == null) throw new IllegalStateException("Missing dependency " + signature);
+        return table[Tablebase.index(position, signature, !raw.equals(signature))] & 0xFF;
+    }
+
+    private static byte[] toWdl(byte[] dtm) {
+        byte[] wdl = new byte[(dtm.length + 3) / 4];
+        for (int i = 0; i < dtm.length; i++) {
+            int code = dtm[i] & 0xFF;
+            int value = code == Tablebase.ILLEGAL ? Tablebase.WDL_ILLEGAL
+                    : code == Tablebase.DRAW ? Tablebase.WDL_DRAW
+                    : Tablebase.isWin(code) ? Tablebase.WDL_WIN : Tablebase.WDL_LOSS;
+            wdl[i >>> 2] |= (byte) (value << ((i & 3) * 2));
+        }
+        return wdl;
+    }
+
+    private static void write(Path file, int format, int pieceCount, byte[] data) throws IOException {
+        Path partial = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(partial))) {
+            DataOutputStream header = new DataOutputStream(out);
+            header.writeInt(Tablebase.MAGIC);
+            header.writeInt(format);
+            header.writeInt(pieceCount);
+            header.writeInt(0);
+            out.write(data);
+        }
+        Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * The working state for one table: the DTM codes being filled in, the count of moves per position that
+     * are not yet known to lose, and the results of capturing and promoting moves found in the first pass.
+     */
+    private final class Build {
+        final String signature;
+        final int[] types, colors;
+        final int pieceCount, size;
+        final byte[] dtm;
+        final byte[] remaining;
+        final byte[] exitWin;  // Fastest win through a capture or promotion, 0 if none
+        final byte[] exitLoss; // Slowest loss through a capture or promotion, for positions where every move loses
+        int longest;
+
+        Build(String signature) {
+            this.signature = signature;
+            this.types = Tablebase.pieceTypes(signature);
+            this.colors = Tablebase.pieceColors(signature);
+            this.pieceCount = types.length;
+            this.size = Tablebase.tableSize(pieceCount);
+            this.dtm = new byte[size];
+            this.remaining = new byte[size];
+            this.exitWin = new byte[size];
+            this.exitLoss = new byte[size];
+        }
+
+        void run() {
+            AtomicInteger lastScheduled = new AtomicInteger();
+            pool.invoke(new Pass(0, size, (from, to) -> initialize(from, to, lastScheduled)));
+            for (int ply = 0; ply <= Tablebase.MAX_DISTANCE; ply++) {
+                final int n = ply;
+                AtomicBoolean frontier = new AtomicBoolean();
+                if (n > 0) pool.invoke(new Pass(0, size, (from, to) -> resolveExitWins(from, to, n)));
+                pool.invoke(new Pass(0, size, (from, to) -> propagate(from, to, n, frontier, lastScheduled)));
+                if (frontier.get()) longest = n;
+                else if (n >= lastScheduled.get()) return;
+            }
+            throw new IllegalStateException(signature + ": mate longer than " + Tablebase.MAX_DISTANCE + " plies");
+        }
+
+        int count(boolean wins) {
+            int total = 0;
+            for (byte code : dtm) {
+                int c = code & 0xFF;
+                if (wins ? Tablebase.isWin(c) : Tablebase.isLoss(c)) total++;
+            }
+            return total;
+        }
+
+        // First pass: legality, mates, move counts and the results of moves that leave this table
+        private void initialize(int from, int to, AtomicInteger lastScheduled) {
+            Position position = new Position();
+            MoveList moves = new MoveList();
+            int[] squares = new int[pieceCount];
+            for (int index = from; index < to; index++) {
+                if (!setUp(position, index, squares)) {
+                    dtm[index] = (byte) Tablebase.ILLEGAL;
+                    continue;
+                }
+                int side = position.sideToMove();
+                if (position.isInCheck(side ^ 1)) {
+                    dtm[index] = (byte) Tablebase.ILLEGAL;
+                    continue;
+                }
+                moves.clear();
+                MoveGenerator.generateLegalMoves(position, moves);
+                if (moves.isEmpty()) {
+                    if (position.isInCheck(side)) dtm[index] = (byte) Tablebase.LOSS; // Mated; otherwise stalemate, a draw
+                    continue;
+                }
+
+                int open = 0, bestWin = 0, worstLoss = 0;
+                for (int i = 0; i < moves.size(); i++) {
+                    int move = moves.get(i);
+                    boolean exit = MoveGenerator.flag(move) == MoveGenerator.PROMOTION
+                            || MoveGenerator.flag(move) == MoveGenerator.EN_PASSANT
+                            || position.pieceAt(MoveGenerator.to(move)) != NO_PIECE;
+                    if (!exit) {
+                        open++;
+                        continue;
+                    }
+                    position.makeMove(move);
+                    int child = lookup(position);
+                    position.unmakeMove(move);
+                    if (Tablebase.isWin(child)) {
+                        worstLoss = Math.max(worstLoss, Tablebase.distance(child) + 1);
+                        continue;
+                    }
+                    open++; // A winning or drawing exit: this position can never be lost
+                    if (Tablebase.isLoss(child)) {
+                        int win = Tablebase.distance(child) + 1;
+                        if (bestWin == 0 || win < bestWin) bestWin = win;
+                    }
+                }
+                remaining[index] = (byte) open;
+                exitWin[index] = (byte) bestWin;
+                exitLoss[index] = (byte) worstLoss;
+                if (bestWin > 0) lastScheduled.accumulateAndGet(bestWin, Math::max);
+                if (open == 0) {
+                    dtm[index] = (byte) (Tablebase.LOSS + worstLoss);
+                    lastScheduled.accumulateAndGet(worstLoss, Math::max);
+                }
+            }
+        }
+
+        private void resolveExitWins(int from, int to, int ply) {
+            for (int index = from; index < to; index++) {
+                if (exitWin[index] == ply && dtm[index] == 0) dtm[index] = (byte) ply;
+            }
+        }
+
+        // Positions resolved at this ply update their predecessors; wins fall on odd plies, losses on even ones
+        private void propagate(int from, int to, int ply, AtomicBoolean frontier, AtomicInteger lastScheduled) {
+            int code = (ply & 1) == 1 ? ply : Tablebase.LOSS + ply;
+            int[] squares = new int[pieceCount];
+            for (int index = from; index < to; index++) {
+                if ((dtm[index] & 0xFF) != code) continue;
+                frontier.set(true);
+                decode(index, squares);
+                int mover = (index >>> (6 * pieceCount)) ^ 1;
+                long occupied = 0;
+                for (int sq : squares) occupied |= 1L << sq;
+                for (int i = 0; i < pieceCount; i++) {
+                    if (colors[i] != mover) continue;
+                    int weight = 6 * (pieceCount - 1 - i);
+                    int base = (mover << (6 * pieceCount)) | (index & ((1 << (6 * pieceCount)) - 1) & ~(63 << weight));
+                    for (long origins = unmoves(types[i], mover, squares[i], occupied); origins != 0; origins &= origins - 1) {
+                        int predecessor = base | (Long.numberOfTrailingZeros(origins) << weight);
+                        if ((dtm[predecessor] & 0xFF) == Tablebase.ILLEGAL) continue;
+                        if (code >= Tablebase.LOSS) {
+                            BYTES.compareAndSet(dtm, predecessor, (byte) 0, (byte) (ply + 1));
+                        } else if (decrement(remaining, predecessor) == 0) {
+                            int loss = Math.max(ply + 1, exitLoss[predecessor]);
+                            if (BYTES.compareAndSet(dtm, predecessor, (byte) 0, (byte) (Tablebase.LOSS + loss))) {
+                                lastScheduled.accumulateAndGet(loss, Math::max);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        // Atomic decrement by compare-and-set, returning the new count
+        private int decrement(byte[] counts, int index) {
+            while (true) {
+                byte current = (byte) BYTES.getVolatile(counts, index);
+                if (BYTES.compareAndSet(counts, index, current, (byte) (current - 1))) return current - 1;
+            }
+        }
+
+        // Squares the piece could have come from by a non-capturing, non-promoting move
+        private long unmoves(int type, int color, int sq, long occupied) {
+            long empty = ~occupied;
+            switch (type) {
+                case KING: return Bitboards.KING_ATTACKS[sq] & empty;
+                case KNIGHT: return Bitboards.KNIGHT_ATTACKS[sq] & empty;
+                case BISHOP: return Bitboards.bishopAttacks(sq, occupied) & empty;
+                case ROOK: return Bitboards.rookAttacks(sq, occupied) & empty;
+                case QUEEN: return Bitboards.queenAttacks(sq, occupied) & empty;
+                default: {
+                    int back = color == WHITE ? 8 : -8;
+                    int origin = sq + back;
+                    int row = sq >> 3;
+                    int originRow = origin >> 3;
+                    if (originRow < 1 || originRow > 6 || (occupied & (1L << origin)) != 0) return 0;
+                    long origins = 1L << origin;
+                    int doubleRow = color == WHITE ? 4 : 3;
+                    if (row == doubleRow && (occupied & (1L << (origin + back))) == 0) origins |= 1L << (origin + back);
+                    return origins;
+                }
+            }
+        }
+
+        private void decode(int index, int[] squares) {
+            for (int i = pieceCount - 1; i >= 0; i--) {
+                squares[i] = index & 63;
+                index >>>= 6;
+            }
+        }
+
+        // Places the pieces for the index; false if two share a square or a pawn stands on a back rank
+        private boolean setUp(Position position, int index, int[] squares) {
+            decode(index, squares);
+            long used = 0;
+            for (int i = 0; i < pieceCount; i++) {
+                long bit = 1L << squares[i];
+                if ((used & bit) != 0) return false;
+                int row = squares[i] >> 3;
+                if (types[i] == PAWN && (row == 0 || row == 7)) return false;
+                used |= bit;
+            }
+            position.clear();
+            for (int i = 0; i < pieceCount; i++) position.putPiece(squares[i], colors[i], types[i]);
+            position.setSideToMove(index >>> (6 * pieceCount));
+            return true;
+        }
+    }
+
+    private interface RangeAction {
+        void apply(int from, int to);
+    }
+
+    @SuppressWarnings("serial") // ForkJoinTask is Serializable, but generation passes never leave the process
+    private static final class Pass extends RecursiveAction {
+        private final int from, to;
+        private final RangeAction action;
+
+        Pass(int from, int to, RangeAction action) {
+            this.from = from;
+            this.to = to;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SPLIT_THRESHOLD) {
+                action.apply(from, to);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new Pass(from, mid, action), new Pass(mid, to, action));
+        }
+    }
+}
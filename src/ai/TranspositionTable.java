@@ -1,42 +1,120 @@
 package ai;
 
-import java.util.concurrent.ConcurrentHashMap;
-
+import java.util.Arrays;
 
+/**
+ * Fixed-size transposition table of packed long slots.
+ * The table is preallocated as a power of two number of 4-entry buckets, so memory stays flat however long the session runs.
+ * Each entry is two longs: the key XOR the data, and the data itself. A torn write from another thread then simply fails the key check.
+ */
 public class TranspositionTable {
-    // Thread-safe for possible parallel search, and usually faster than HashMap for read-heavy usage
-    private final ConcurrentHashMap<Long, TTEntry> table = new ConcurrentHashMap<>(1 << 16);
+    public static final int EXACT = 0, LOWERBOUND = -1, UPPERBOUND = 1;
+    public static final int DEFAULT_SIZE_MB = 16;
+
+    private static final int BUCKET_SIZE = 4;
+    private static final int ENTRY_BYTES = 16;
+
+    // Data layout: score (32 bits) | move (18 bits) | depth (7 bits) | bound (2 bits) | generation (5 bits)
+    private static final int MOVE_SHIFT = 32, DEPTH_SHIFT = 50, BOUND_SHIFT = 57, GENERATION_SHIFT = 59;
+    private static final long MOVE_MASK = (1L << 18) - 1, DEPTH_MASK = 127, BOUND_MASK = 3, GENERATION_MASK = 31;
 
-    public void put(long hash, TTEntry entry) {
-        // Only keep the entry if it is deeper than or equal to the current one (replace only if better)
-        table.compute(hash, (k, old) -> (old == null || entry.depth >= old.depth) ? entry : old);
+    private final long[] table;
+    private final long bucketMask;
+    private int generation;
+
+    public TranspositionTable() {
+        this(DEFAULT_SIZE_MB);
     }
 
-    public TTEntry get(long hash) {
-        return table.get(hash);
+    public TranspositionTable(int sizeMb) {
+        long entries = Math.max(BUCKET_SIZE, ((long) sizeMb << 20) / ENTRY_BYTES);
+        // Java arrays are int-indexed, which caps the table at 2^26 buckets (4 GB)
+        long buckets = Math.min(Long.highestOneBit(entries / BUCKET_SIZE), 1L << 26);
+        this.table = new long[(int) (buckets * BUCKET_SIZE * 2)];
+        this.bucketMask = buckets - 1;
     }
 
-    public boolean contains(long hash) {
-        return table.containsKey(hash);
+    /**
+     * Starts a new search generation; entries from older searches become preferred victims.
+     */
+    public void newSearch() {
+        generation = (generation + 1) & (int) GENERATION_MASK;
+    }
+
+    /**
+     * Returns the packed data stored for the hash, or 0 if there is none.
+     * Decode it with score(), move(), depth() and flag().
+     */
+    public long probe(long hash) {
+        int index = bucketIndex(hash);
+        for (int i = index; i < index + BUCKET_SIZE * 2; i += 2) {
+            long data = table[i + 1];
+            if ((table[i] ^ data) == hash && data != 0) return data;
+        }
+        return 0L;
+    }
+
+    public void store(long hash, int depth, int score, int flag, int bestMove) {
+        int index = bucketIndex(hash);
+        int victim = index;
+        int victimWorth = Integer.MAX_VALUE;
+
+        for (int i = index; i < index + BUCKET_SIZE * 2; i += 2) {
+            long data = table[i + 1];
+            if (data == 0) { // Empty slot
+                victim = i;
+                break;
+            }
+            if ((table[i] ^ data) == hash) {
+                // Same position: keep the old best move if this search did not find one
+                if (bestMove == MoveGenerator.NO_MOVE) bestMove = move(data);
+                victim = i;
+                break;
+            }
+            // Prefer to evict shallow entries and entries left over from earlier searches
+            int age = (generation - (int) ((data >>> GENERATION_SHIFT) & GENERATION_MASK)) & (int) GENERATION_MASK;
+            int worth = depth(data) - 4 * age;
+            if (worth < victimWorth) {
+                victimWorth = worth;
+                victim = i;
+            }
+        }
+
+        long data = (score & 0xFFFFFFFFL)
+                | ((bestMove & MOVE_MASK) << MOVE_SHIFT)
+                | ((Math.min(depth, (int) DEPTH_MASK) & DEPTH_MASK) << DEPTH_SHIFT)
+                | ((long) (flag + 2) << BOUND_SHIFT) // Stored as 1..3 so that 0 marks an empty slot
+                | ((long) generation << GENERATION_SHIFT);
+        table[victim] = hash ^ data;
+        table[victim + 1] = data;
     }
 
     public void clear() {
-        table.clear();
+        Arrays.fill(table, 0L);
+        generation = 0;
     }
 
-    public static final class TTEntry {
-        public static final int EXACT = 0, LOWERBOUND = -1, UPPERBOUND = 1;
+    public int sizeMb() {
+        return (int) (((long) table.length * Long.BYTES) >> 20);
+    }
 
-        public final int depth;
-        public final int score;
-        public final int flag;
-        public final ChessAI.Move bestMove;
+    public static int score(long data) {
+        return (int) data;
+    }
 
-        public TTEntry(int depth, int score, int flag, ChessAI.Move bestMove) {
-            this.depth = depth;
-            this.score = score;
-            this.flag = flag;
-            this.bestMove = bestMove;
-        }
+    public static int move(long data) {
+        return (int) ((data >>> MOVE_SHIFT) & MOVE_MASK);
+    }
+
+    public static int depth(long data) {
+        return (int) ((data >>> DEPTH_SHIFT) & DEPTH_MASK);
+    }
+
+    public static int flag(long data) {
+        return (int) ((data >>> BOUND_SHIFT) & BOUND_MASK) - 2;
+    }
+
+    private int bucketIndex(long hash) {
+        return (int) (hash & bucketMask) * BUCKET_SIZE * 2;
     }
-}
\ No newline at end of file
+}
@@ -1,19 +1,19 @@
 package ai;
 
-import java.util.concurrent.ThreadLocalRandom;
 import chessPieces.Piece;
 
-import static utilz.Constants.getType;
-
 
 public class Zobrist {
-    // [color][pieceType][squareIndex], color: 0=white, 1=black, pieceType: 0-5 (P,N,B,R,Q,K)
+    // [color][pieceType][squareIndex], color: 0=white, 1=black, pieceType: Position.PAWN..Position.KING
     private static final long[][][] PIECE_HASH = new long[2][6][64];
     private static final long WHITE_TO_MOVE_HASH;
+    // One key per combination of the four castling right bits
+    private static final long[] CASTLING_HASH = new long[16];
+    // One key per file of the en passant target square
+    private static final long[] EN_PASSANT_HASH = new long[8];
 
     static {
         // Use a fixed seed for reproducibility in debugging and testing
-        ThreadLocalRandom rand = ThreadLocalRandom.current();
         RandomSeeded seededRand = new RandomSeeded(2025);
 
         for (int color = 0; color < 2; color++) {
@@ -24,11 +24,40 @@ public class Zobrist {
             }
         }
         WHITE_TO_MOVE_HASH = seededRand.nextLong();
+        // Castling keys are built from one key per right so that losing a right is a single XOR
+        long[] rightKeys = new long[4];
+        for (int i = 0; i < 4; i++) rightKeys[i] = seededRand.nextLong();
+        for (int rights = 0; rights < 16; rights++) {
+            for (int i = 0; i < 4; i++) {
+                if ((rights & (1 << i)) != 0) CASTLING_HASH[rights] ^= rightKeys[i];
+            }
+        }
+        for (int file = 0; file < 8; file++) EN_PASSANT_HASH[file] = seededRand.nextLong();
+    }
+
+    public static long piece(int color, int type, int sq) {
+        return PIECE_HASH[color][type][sq];
+    }
+
+    public static long whiteToMove() {
+        return WHITE_TO_MOVE_HASH;
+    }
+
+    public static long castling(int rights) {
+        return CASTLING_HASH[rights];
+    }
+
+    /**
+     * Key for an en passant square, or 0 when there is none.
+     */
+    public static long enPassant(int sq) {
+        return sq < 0 ? 0L : EN_PASSANT_HASH[sq & 7];
     }
 
     /**
      * Computes the Zobrist hash for the given board and side to move.
-     * Only piece placement and side to move are included (no castling/en passant).
+     * The mailbox carries no castling or en passant state, so only piece placement and side to move are included.
+     * Position keeps the full hash incrementally; use Position.hash() in the search.
      */
     public static long computeHash(Piece[][] board, boolean whiteToMove) {
         long hash = 0L;
@@ -37,11 +66,9 @@ public class Zobrist {
                 Piece p = board[row][col];
                 if (p != null) {
                     int color = p.isWhite() ? 0 : 1;
-                    int type = getType(p); // 1 to 6 (PAWN=1, ..., KING=6)
-                    if (type >= 1 && type <= 6) {
-                        int adjustedType = type - 1;
-                        int sq = row * 8 + col;
-                        hash ^= PIECE_HASH[color][adjustedType][sq];
+                    int type = Position.typeOf(p);
+                    if (type != Position.NO_PIECE) {
+                        hash ^= PIECE_HASH[color][type][row * 8 + col];
                     }
                 }
             }
@@ -50,6 +77,25 @@ public class Zobrist {
         return hash;
     }
 
+    /**
+     * Computes the full hash of a Position from scratch, including castling rights and en passant.
+     * Matches the value Position maintains incrementally, so it can be used to verify it.
+     */
+    public static long computeHash(Position position) {
+        long hash = 0L;
+        for (int color = 0; color < 2; color++) {
+            for (int type = Position.PAWN; type <= Position.KING; type++) {
+                for (long b = position.pieces(color, type); b != 0; b &= b - 1) {
+                    hash ^= PIECE_HASH[color][type][Long.numberOfTrailingZeros(b)];
+                }
+            }
+        }
+        if (position.sideToMove() == Position.WHITE) hash ^= WHITE_TO_MOVE_HASH;
+        hash ^= CASTLING_HASH[position.castlingRights()];
+        hash ^= enPassant(position.enPassantSquare());
+        return hash;
+    }
+
     // Utility for deterministic random generation
     private static class RandomSeeded {
         private long seed;
@@ -62,4 +108,4 @@ public class Zobrist {
             return (seed >>> 16) ^ (seed << 32);
         }
     }
-}
\ No newline at end of file
+}
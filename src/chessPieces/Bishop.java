@@ -1,6 +1,7 @@
 package chessPieces;
 
 import main.Board;
+import utilz.Attacks;
 import utilz.LoadImage;
 
 public class Bishop extends Piece {
@@ -12,7 +13,7 @@ public class Bishop extends Piece {
 
     @Override
     public boolean logicMove(int oldRow, int oldCol, int newRow, int newCol, Piece[][] board) {
-        if (Math.abs(newRow - oldRow) == Math.abs(newCol - oldCol)) {
+        if (Attacks.DIRECTION[oldRow * 8 + oldCol][newRow * 8 + newCol] >= Attacks.FIRST_DIAGONAL) {
             Piece target = board[newRow][newCol];
             if (target == null || target.isWhite != this.isWhite) {
 //                isMove = true;
@@ -24,21 +25,8 @@ public class Bishop extends Piece {
 
     @Override
     public int[] getBlockPieces(Board board, int newRow, int newCol) {
-        int oldRow = this.getRow();
-        int oldCol = this.getCol();
-
-        if (Math.abs(newRow - oldRow) == Math.abs(newCol - oldCol)) {
-            int rowStep = (newRow > oldRow) ? 1 : -1;
-            int colStep = (newCol > oldCol) ? 1 : -1;
-
-            int r = oldRow + rowStep, c = oldCol + colStep;
-            while (r != newRow || c != newCol) {  // Loop until reaching target square
-                if (board.getPieceAt(r, c) != null) {  // Check (r, c) instead of (c, r)
-                    return new int[]{r, c};  // Blocked position
-                }
-                r += rowStep;
-                c += colStep;
-            }
+        if (Attacks.DIRECTION[row * 8 + col][newRow * 8 + newCol] >= Attacks.FIRST_DIAGONAL) {
+            return firstBlocker(board, newRow, newCol);
         }
         return null;  // No blocking piece
     }
@@ -1,21 +1,29 @@
 package chessPieces;
 
 import main.Board;
+import utilz.Attacks;
 import utilz.LoadImage;
 
 public class King extends Piece {
     private boolean isMove = false; // Check the moving state of King piece
 
+    // [row] the squares castling needs empty, as {row, cols...}, shared and never to be written
+    private static final int[][] KINGSIDE_PATHS = new int[8][];
+    private static final int[][] QUEENSIDE_PATHS = new int[8][];
+
+    static {
+        for (int row = 0; row < 8; row++) {
+            KINGSIDE_PATHS[row] = new int[]{row, 5, 6};
+            QUEENSIDE_PATHS[row] = new int[]{row, 1, 2, 3};
+        }
+    }
+
     public King(int x, int y, boolean isWhite) {
         super(x, y, LoadImage.GetPieceImage(isWhite, "k"), isWhite);
     }
 
     @Override
     public boolean logicMove(int oldRow, int oldCol, int newRow, int newCol, Piece[][] board) {
-        int rowDiff = Math.abs(newRow - oldRow);
-        int colDiff = Math.abs(newCol - oldCol);
-
-
         // Checking castling
         if (!isMove && oldRow == newRow) {
 
@@ -24,7 +32,7 @@ public class King extends Piece {
                 Piece rook = board[oldRow][7];
                 if (rook instanceof Rook && !((Rook) rook).isMoved()) {
                     if (board[oldRow][5] == null && board[oldRow][6] == null &&
-                            !isSquareUnderAttack(board, newCol, newCol , isWhite  )) {
+                            !isSquareUnderAttack(board, oldRow, newCol, isWhite)) {
                         return true;
                     }
                 }
@@ -42,7 +50,7 @@ public class King extends Piece {
         }
 
 
-        if (rowDiff <= 1 && colDiff <= 1 && (rowDiff + colDiff) > 0) {
+        if ((Attacks.KING_MASKS[oldRow * 8 + oldCol] & (1L << (newRow * 8 + newCol))) != 0) {
             Piece target = board[newRow][newCol];
             //Only check opponent piece
             if ((target == null || target.isWhite != this.isWhite) &&
@@ -55,15 +63,12 @@ public class King extends Piece {
 
     @Override
     public int[] getBlockPieces(Board board, int newRow, int newCol) {
-        int oldRow = this.getRow();
-        int oldCol = this.getCol();
-
-        if (newCol == oldCol + 2) {
-            return new int[]{oldRow, 5, 6};
+        if (newCol == col + 2) {
+            return KINGSIDE_PATHS[row];
         }
 
-        if (newCol == oldCol - 2) {
-            return new int[]{oldRow, 1, 2, 3};
+        if (newCol == col - 2) {
+            return QUEENSIDE_PATHS[row];
         }
         return null;
     }
@@ -1,5 +1,6 @@
 package chessPieces;
 
+import utilz.Attacks;
 import utilz.LoadImage;
 
 public class Knight extends Piece {
@@ -9,10 +10,7 @@ public class Knight extends Piece {
 
     @Override
     public  boolean logicMove( int oldRow , int oldCol , int newRow , int newCol, Piece[][] board){
-        int rowDiff = Math.abs(newRow - oldRow);
-        int colDiff = Math.abs(newCol - oldCol);
-
-        return (rowDiff == 2 && colDiff == 1) || (rowDiff == 1 && colDiff == 2);
+        return (Attacks.KNIGHT_MASKS[oldRow * 8 + oldCol] & (1L << (newRow * 8 + newCol))) != 0;
     }
     @Override
     public int getValue() {
@@ -6,6 +6,7 @@ import javafx.scene.layout.AnchorPane;
 import javafx.scene.layout.Pane;
 import main.Board;
 import main.Game;
+import utilz.Attacks;
 
 import java.awt.image.BufferedImage;
 
@@ -18,7 +19,7 @@ public abstract class Piece {
     protected int height;
     protected int width;
 
-    protected Image img;
+    protected final Image img; // Shared with every piece of the same color and type, see LoadImage
 
     public Piece(int col, int row, Image img , boolean isWhite){
         this.col = col;
@@ -47,19 +48,23 @@ public abstract class Piece {
 
     }
 
-    //Loop through the board check all enemy piece whether you can move to that position
+    // Whether any enemy of the given side attacks the square, looked up along precomputed rays
     protected boolean isSquareUnderAttack(Piece[][] board, int row, int col, boolean byWhite) {
-        for (int r = 0; r < 8; r++) {
-            for (int c = 0; c < 8; c++) {
-                Piece p = board[r][c];
-                if (p != null && p.isWhite() == !byWhite) {
-                    if (p.logicMove(p.getRow(), p.getCol(), row, col, board)) {
-                        return true;
-                    }
-                }
-            }
+        return Attacks.isSquareAttacked(board, row, col, !byWhite);
+    }
+
+    // The occupied square nearest this piece strictly between it and the target, or null if the way is clear.
+    // The squares come from Attacks.BETWEEN and are looked up on the board's own squares, nearest first, so the
+    // answer never depends on the engine position mirroring them. The result is shared from Attacks.SQUARES
+    protected int[] firstBlocker(Board board, int newRow, int newCol) {
+        int from = row * 8 + col, to = newRow * 8 + newCol;
+        Piece[][] squares = board.getBoard();
+        for (long between = Attacks.BETWEEN[from][to]; between != 0; ) {
+            int nearest = to > from ? Long.numberOfTrailingZeros(between) : 63 - Long.numberOfLeadingZeros(between);
+            if (squares[nearest >> 3][nearest & 7] != null) return Attacks.SQUARES[nearest];
+            between &= ~(1L << nearest);
         }
-        return false;
+        return null;
     }
 
     public abstract int getValue();
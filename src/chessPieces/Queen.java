@@ -1,6 +1,7 @@
 package chessPieces;
 
 import main.Board;
+import utilz.Attacks;
 import utilz.LoadImage;
 
 public class Queen extends Piece {
@@ -14,9 +15,7 @@ public class Queen extends Piece {
 
     @Override
     public  boolean logicMove( int oldRow , int oldCol , int newRow , int newCol, Piece[][] board){
-        if (Math.abs(oldCol - newCol) == Math.abs(oldRow - newRow)
-                || oldRow == newRow
-                || oldCol == newCol) {
+        if (Attacks.DIRECTION[oldRow * 8 + oldCol][newRow * 8 + newCol] >= 0) {
             Piece target = board[newRow][newCol];
             if (target == null || target.isWhite != this.isWhite) {
 //                isMove = true;
@@ -28,17 +27,9 @@ public class Queen extends Piece {
 
     @Override
     public int[] getBlockPieces(Board board, int newRow, int newCol) {
-        int oldRow = this.getRow();
-        int oldCol = this.getCol();
-
-        // Use Rook's logic if moving like a rook
-        if (oldRow == newRow || oldCol == newCol) {
-            return new Rook(oldCol, oldRow, this.isWhite()).getBlockPieces(board, newRow, newCol);
-        }
-
-        // Use Bishop's logic if moving like a bishop
-        if (Math.abs(newRow - oldRow) == Math.abs(newCol - oldCol)) {
-            return new Bishop(oldCol, oldRow, this.isWhite()).getBlockPieces(board, newRow, newCol);
+        // Any rank, file or diagonal, looked up without creating a Rook or Bishop to ask
+        if (Attacks.DIRECTION[row * 8 + col][newRow * 8 + newCol] >= 0) {
+            return firstBlocker(board, newRow, newCol);
         }
 
         return null; // No blocking piece
@@ -1,6 +1,7 @@
 package chessPieces;
 
 import main.Board;
+import utilz.Attacks;
 import utilz.LoadImage;
 
 public class Rook extends Piece {
@@ -12,7 +13,7 @@ public class Rook extends Piece {
 
     @Override
     public boolean logicMove(int oldRow, int oldCol, int newRow, int newCol, Piece[][] board) {
-        if (oldCol == newCol || oldRow == newRow) {
+        if (isStraight(Attacks.DIRECTION[oldRow * 8 + oldCol][newRow * 8 + newCol])) {
             Piece target = board[newRow][newCol];
             return target == null || target.isWhite != this.isWhite;
         }
@@ -21,36 +22,17 @@ public class Rook extends Piece {
 
     @Override
     public int[] getBlockPieces(Board board, int newRow, int newCol) {
-        int oldRow = this.getRow();
-        int oldCol = this.getCol();
-
-        // Moving vertically
-        if (oldCol == newCol) {
-            int step = (newRow > oldRow) ? 1 : -1;
-            int r = oldRow + step;
-            while (r != newRow) {  // Loop until reaching target row
-                if (board.getPieceAt(r, oldCol) != null) {  // Corrected row-col order
-                    return new int[]{r, oldCol}; // Blocked piece found
-                }
-                r += step;
-            }
-        }
-
-        // Moving horizontally
-        else if (oldRow == newRow) {
-            int step = (newCol > oldCol) ? 1 : -1;
-            int c = oldCol + step;
-            while (c != newCol) {  // Loop until reaching target column
-                if (board.getPieceAt(oldRow, c) != null) {  // Corrected row-col order
-                    return new int[]{oldRow, c}; // Blocked piece found
-                }
-                c += step;
-            }
+        if (isStraight(Attacks.DIRECTION[row * 8 + col][newRow * 8 + newCol])) {
+            return firstBlocker(board, newRow, newCol);
         }
 
         return null; // No blocking piece
     }
 
+    private static boolean isStraight(int direction) {
+        return direction >= 0 && direction < Attacks.FIRST_DIAGONAL;
+    }
+
     public boolean isMoved() {
         return isMove;
     }
@@ -3,11 +3,20 @@ package main;
 import chessPieces.*;
 import javafx.application.Platform;
 import javafx.scene.layout.AnchorPane;
+import utilz.Attacks;
 import utilz.MoveSnapshot;
 import ai.ChessAI;
+import ai.OpeningBook;
+import ai.Position;
+import ai.SearchLimits;
+import ai.Tablebase;
 import static utilz.Constants.*;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
@@ -20,6 +29,9 @@ import java.util.concurrent.Executors;
 public class Board {
 
     private final Piece[][] board = new Piece[8][8];
+    private final Position position = new Position(); // Bitboard mirror of board, searched by the AI
+    private final LegalMoveGenerator moveGenerator = new LegalMoveGenerator(board);
+    // The pieces on the board and the king squares, kept in step with board[][] by setSquare and relocate
     private final List<Piece> whitePieces = new ArrayList<>();
     private final List<Piece> blackPieces = new ArrayList<>();
     private List<int[]> validMoves = Collections.emptyList();
@@ -27,15 +39,29 @@ public class Board {
     private int whiteKingRow = -1, whiteKingCol = -1;
     private int blackKingRow = -1, blackKingCol = -1;
 
+    // Undo stack, indexed by ply: records are allocated up front and refilled in place for every move
+    private static final int UNDO_STACK_SIZE = 512;
+    private MoveSnapshot[] undoStack = new MoveSnapshot[UNDO_STACK_SIZE];
+    private int ply;
+
     private Piece selectedPiece;
     private boolean whiteTurn = true;
     private boolean isPlayerMoving = true;
     private ChessController chessController;
-    private final ExecutorService aiExecutor = Executors.newSingleThreadExecutor();
+    private static final int AI_FIXED_DEPTH = 3;
+    private static final String BOOK_FILE = "book.bin"; // Polyglot book, overridable with -Dchess.book=<path>
+    private static final String TABLEBASE_DIR = "tablebases"; // Output of ai.TablebaseGenerator, or -Dchess.tablebases=<dir>
+    // Daemon, so that a search still running when the window closes cannot keep the JVM alive
+    private final ExecutorService aiExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "chess-ai");
+        thread.setDaemon(true);
+        return thread;
+    });
     private ChessAI ai;
     private boolean isAIEnabled = false;
 
     public Board() {
+        for (int i = 0; i < undoStack.length; i++) undoStack[i] = new MoveSnapshot();
         initializePieces();
     }
 
@@ -45,7 +71,30 @@ public class Board {
 
     public void setAIEnabled(boolean enabled) {
         this.isAIEnabled = enabled;
-        this.ai = enabled ? new ChessAI(false) : null; // AI plays as black if enabled
+        if (ai != null) ai.shutdown();
+        this.ai = enabled ? createAI() : null; // AI plays as black if enabled
+    }
+
+    private ChessAI createAI() {
+        ChessAI ai = new ChessAI(false);
+        ai.setPonder(true); // Think on the player's time while aiExecutor would otherwise sit idle
+        Path book = Path.of(System.getProperty("chess.book", BOOK_FILE));
+        if (Files.isRegularFile(book)) {
+            try {
+                ai.setOpeningBook(OpeningBook.open(book));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        Path tables = Path.of(System.getProperty("chess.tablebases", TABLEBASE_DIR));
+        if (Files.isDirectory(tables)) {
+            try {
+                ai.setTablebase(Tablebase.open(tables));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return ai;
     }
 
     /**
@@ -104,21 +153,16 @@ public class Board {
      * Actually perform a move for the given piece.
      */
     private void movePiece(Piece piece, int col, int row) {
+        boolean wasFirstMove = recordFirstMoveStatus(piece); // Before legalMove, which marks pawns as moved
         if (!legalMove(piece, col, row) || !isPlayerMoving) return;
 
         isPlayerMoving = false;
         int oldRow = piece.getRow(), oldCol = piece.getCol();
-        boolean wasFirstMove = recordFirstMoveStatus(piece);
-
-        MoveSnapshot snapshot = new MoveSnapshot(piece, board[row][col], oldRow, oldCol, row, col, whiteTurn, wasFirstMove);
-        if (chessController != null) chessController.addMoveSnapshot(snapshot);
 
+        recordMove(piece, row, col, wasFirstMove);
         makeMove(piece, oldRow, oldCol, row, col);
 
-        if (piece instanceof King king) {
-            handleCastling(king, oldCol, row, col);
-            updateKingPosition(king, row, col);
-        }
+        if (piece instanceof King king) handleCastling(king, oldCol, row, col);
 
         if(piece instanceof Pawn)
         {
@@ -126,7 +170,7 @@ public class Board {
         }
         if (isCheckmate(!whiteTurn) && chessController != null) chessController.handleCheckmate(whiteTurn);
 
-        whiteTurn = !whiteTurn;
+        setWhiteTurn(!whiteTurn);
         if (chessController != null) chessController.redraw();
 
         if (isAITurn()) performAIMove();
@@ -144,17 +188,123 @@ public class Board {
             } else {
                 // Fallback to queen if no controller available
                 Piece promotedPiece = new Queen(pawn.getCol(), row, isWhite);
-                board[row][pawn.getCol()] = promotedPiece;
+                setSquare(row, pawn.getCol(), promotedPiece);
             }
         }
     }
 
     private void makeMove(Piece piece, int fromRow, int fromCol, int toRow, int toCol) {
+        relocate(piece, fromRow, fromCol, toRow, toCol);
+        updateMoveStatus(piece);
+        syncCastlingRights();
+        boolean doublePush = piece instanceof Pawn && Math.abs(toRow - fromRow) == 2;
+        position.setEnPassantSquare(doublePush ? ((fromRow + toRow) / 2) * 8 + toCol : -1);
+    }
+
+    /**
+     * Writes a square of the mailbox and mirrors it into the bitboard position and the piece lists:
+     * a piece written over leaves its side's list and the piece written joins its own.
+     * Every persistent change to board[][] must go through here or relocate.
+     */
+    private void setSquare(int row, int col, Piece piece) {
+        Piece previous = board[row][col];
+        if (previous != piece) {
+            if (previous != null) piecesOf(previous.isWhite()).remove(previous);
+            if (piece != null) piecesOf(piece.isWhite()).add(piece);
+        }
+        if (piece instanceof King) updateKingPosition((King) piece, row, col);
+        board[row][col] = piece;
+        mirrorSquare(row, col);
+    }
+
+    /**
+     * Moves a piece already on the board, capturing whatever stands on the destination.
+     * Unlike clearing one square and setting the other, the mover never leaves its list.
+     */
+    private void relocate(Piece piece, int fromRow, int fromCol, int toRow, int toCol) {
+        Piece captured = board[toRow][toCol];
+        if (captured != null && captured != piece) piecesOf(captured.isWhite()).remove(captured);
         board[fromRow][fromCol] = null;
+        board[toRow][toCol] = piece;
         piece.setRow(toRow);
         piece.setCol(toCol);
-        board[toRow][toCol] = piece;
-        updateMoveStatus(piece);
+        if (piece instanceof King) updateKingPosition((King) piece, toRow, toCol);
+        mirrorSquare(fromRow, fromCol);
+        mirrorSquare(toRow, toCol);
+    }
+
+    private void mirrorSquare(int row, int col) {
+        Piece piece = board[row][col];
+        int sq = row * 8 + col;
+        position.removePiece(sq);
+        if (piece != null) {
+            position.putPiece(sq, piece.isWhite() ? Position.WHITE : Position.BLACK, Position.typeOf(piece));
+        }
+    }
+
+    private List<Piece> piecesOf(boolean white) {
+        return white ? whitePieces : blackPieces;
+    }
+
+    /**
+     * Replaces the piece on a square, e.g. when a pawn is promoted.
+     */
+    public void placePiece(int row, int col, Piece piece) {
+        if (!isOnBoard(row, col)) return;
+        setSquare(row, col, piece);
+    }
+
+    // Castling rights follow the moved flags of the kings and rooks still on their home squares
+    private void syncCastlingRights() {
+        int rights = 0;
+        if (hasCastlingRight(7, 7)) rights |= Position.WHITE_KINGSIDE;
+        if (hasCastlingRight(7, 0)) rights |= Position.WHITE_QUEENSIDE;
+        if (hasCastlingRight(0, 7)) rights |= Position.BLACK_KINGSIDE;
+        if (hasCastlingRight(0, 0)) rights |= Position.BLACK_QUEENSIDE;
+        position.setCastlingRights(rights);
+    }
+
+    private boolean hasCastlingRight(int row, int rookCol) {
+        boolean white = row == 7;
+        return board[row][4] instanceof King king && !king.isMoved() && king.isWhite() == white
+                && board[row][rookCol] instanceof Rook rook && !rook.isMoved() && rook.isWhite() == white;
+    }
+
+    /**
+     * Applies a move chosen by the AI, including the rook hop of castling,
+     * en passant captures and promotions.
+     */
+    private void applyAIMove(Piece piece, ChessAI.Move move) {
+        MoveSnapshot record = recordMove(piece, move.toRow, move.toCol, recordFirstMoveStatus(piece));
+        if (move.capturedPiece != null && board[move.toRow][move.toCol] == null) {
+            // En passant: the captured pawn is beside the destination square
+            record.capturedPiece = move.capturedPiece;
+            record.setCapturedSquare(move.capturedPiece.getRow(), move.capturedPiece.getCol());
+            setSquare(move.capturedPiece.getRow(), move.capturedPiece.getCol(), null);
+        }
+        makeMove(piece, move.fromRow, move.fromCol, move.toRow, move.toCol);
+        if (piece instanceof King king) handleCastling(king, move.fromCol, move.toRow, move.toCol);
+        if (move.promotion > 0) {
+            setSquare(move.toRow, move.toCol, createPiece(move.promotion, move.toCol, move.toRow, piece.isWhite()));
+        }
+    }
+
+    /**
+     * Fills the next undo record with the state the move is about to overwrite and returns it.
+     * Captures are assumed to be on the destination square; the caller adjusts the record otherwise.
+     */
+    private MoveSnapshot recordMove(Piece piece, int toRow, int toCol, boolean wasFirstMove) {
+        if (ply == undoStack.length) {
+            // Only very long games get here; the new records are allocated once and reused after that
+            int oldLength = undoStack.length;
+            undoStack = Arrays.copyOf(undoStack, oldLength * 2);
+            for (int i = oldLength; i < undoStack.length; i++) undoStack[i] = new MoveSnapshot();
+        }
+        MoveSnapshot record = undoStack[ply++];
+        record.set(piece, board[toRow][toCol], piece.getRow(), piece.getCol(), toRow, toCol, whiteTurn, wasFirstMove);
+        record.setPositionState(position.castlingRights(), position.enPassantSquare());
+        if (chessController != null) chessController.onMoveRecorded();
+        return record;
     }
 
     private boolean recordFirstMoveStatus(Piece piece) {
@@ -172,9 +322,14 @@ public class Board {
 
     private void performAIMove() {
         if (chessController != null) chessController.showBotThinking(true);
+        // Budget the search from the bot's clock; without a controller there is no clock, so search a fixed depth
+        SearchLimits limits = chessController != null
+                ? SearchLimits.forClock(chessController.getTimeSeconds(whiteTurn) * 1000L, 0)
+                : SearchLimits.depth(AI_FIXED_DEPTH);
+        ai.ponderHit(position, limits); // Let a search on the expected reply finish the job, or cancel it
         aiExecutor.submit(() -> {
             try {
-                ChessAI.Move bestMove = ai.getBestMove(this, 3);
+                ChessAI.Move bestMove = ai.getBestMove(this, limits);
                 Platform.runLater(() -> {
                     if (bestMove != null) {
                         synchronized (this) {
@@ -184,13 +339,17 @@ public class Board {
                             }
                             Piece aiPiece = getPieceAt(bestMove.fromRow, bestMove.fromCol);
                             if (aiPiece != null) {
-                                makeMove(aiPiece, bestMove.fromRow, bestMove.fromCol, bestMove.toRow, bestMove.toCol);
-                                whiteTurn = true;
+                                applyAIMove(aiPiece, bestMove);
+                                setWhiteTurn(true);
                                 isPlayerMoving = true;
+                                boolean mated = isCheckmate(true);
                                 if (chessController != null) {
                                     chessController.redraw();
-                                    if (isCheckmate(true)) chessController.handleCheckmate(whiteTurn);
+                                    if (ai != null) chessController.showSearchStats(ai.getLastSearchStats());
+                                    if (mated) chessController.handleCheckmate(whiteTurn);
                                 }
+                                // A finished game has no reply to ponder; on stalemate startPondering finds none itself
+                                if (ai != null && !mated) ai.startPondering(position, aiExecutor);
                             }
                         }
                     }
@@ -201,15 +360,23 @@ public class Board {
                 Platform.runLater(() -> {
                     if (isCheckmate(true) && chessController != null)
                         chessController.handleCheckmate(false);
-                    whiteTurn = true;
+                    setWhiteTurn(true);
                     isPlayerMoving = true;
                 });
             }
         });
     }
 
+    /**
+     * Cancels a search on the player's time, for when the game ends or is left.
+     */
+    public void stopPondering() {
+        if (ai != null) ai.stopPondering();
+    }
+
     public void shutdown() {
         aiExecutor.shutdown();
+        if (ai != null) ai.shutdown();
     }
 
     private void handleCastling(King king, int oldCol, int row, int col) {
@@ -221,13 +388,8 @@ public class Board {
         if (!isOnBoard(row, rookCol) || !isOnBoard(row, targetCol)) return;
         Piece rook = board[row][rookCol];
         if (rook instanceof Rook) {
-            board[row][rookCol] = null;
-            rook.setCol(targetCol);
-            board[row][targetCol] = rook;
+            relocate(rook, row, rookCol, row, targetCol);
             ((Rook) rook).setMove(true);
-            List<Piece> pieces = rook.isWhite() ? whitePieces : blackPieces;
-            pieces.remove(rook);
-            pieces.add(rook);
         }
     }
 
@@ -235,12 +397,17 @@ public class Board {
         for (int row = 0; row < 8; row++)
             for (int col = 0; col < 8; col++)
                 board[row][col] = null;
-        whiteTurn = true;
+        position.clear();
+        whitePieces.clear();
+        blackPieces.clear();
+        setWhiteTurn(true);
         selectedPiece = null;
         validMoves = Collections.emptyList();
+        ply = 0;
         whiteKingRow = whiteKingCol = blackKingRow = blackKingCol = -1;
         initializePieces();
-        ai = isAIEnabled ? new ChessAI(false) : null;
+        if (ai != null) ai.shutdown();
+        ai = isAIEnabled ? createAI() : null;
         if (chessController != null) chessController.redraw();
     }
 
@@ -256,29 +423,25 @@ public class Board {
                 {1, 2, 3, 4, 5, 3, 2, 1}
         };
 
-        whitePieces.clear();
-        blackPieces.clear();
-
         for (int row = 0; row < 8; row++) {
             for (int col = 0; col < 8; col++) {
                 boolean isWhite = row >= 6;
-                int type = initialBoard[row][col];
-                Piece piece = switch (type) {
-                    case ROOK -> new Rook(col, row, isWhite);
-                    case KNIGHT -> new Knight(col, row, isWhite);
-                    case BISHOP -> new Bishop(col, row, isWhite);
-                    case QUEEN -> new Queen(col, row, isWhite);
-                    case KING -> new King(col, row, isWhite);
-                    case PAWN -> new Pawn(col, row, isWhite);
-                    default -> null;
-                };
-                board[row][col] = piece;
-                if (piece != null) {
-                    (isWhite ? whitePieces : blackPieces).add(piece);
-                    if (piece instanceof King) updateKingPosition((King) piece, row, col);
-                }
+                setSquare(row, col, createPiece(initialBoard[row][col], col, row, isWhite));
             }
         }
+        syncCastlingRights();
+    }
+
+    private static Piece createPiece(int type, int col, int row, boolean isWhite) {
+        return switch (type) {
+            case ROOK -> new Rook(col, row, isWhite);
+            case KNIGHT -> new Knight(col, row, isWhite);
+            case BISHOP -> new Bishop(col, row, isWhite);
+            case QUEEN -> new Queen(col, row, isWhite);
+            case KING -> new King(col, row, isWhite);
+            case PAWN -> new Pawn(col, row, isWhite);
+            default -> null;
+        };
     }
 
     private boolean legalMove(Piece piece, int col, int row) {
@@ -312,168 +475,83 @@ public class Board {
 
     private List<int[]> getValidMoves(Piece piece) {
         List<int[]> moves = new ArrayList<>();
-        boolean wasMoved = false;
-        if (piece instanceof Pawn pawn) wasMoved = pawn.isMoved();
-        else if (piece instanceof King king) {
-            wasMoved = king.isMoved();
-            if (!king.isMoved() && !isKingInCheck(king.isWhite())) {
-                int row = king.getRow(), col = king.getCol();
-                if (canCastle(king, true)) moves.add(new int[]{col + 2, row});
-                if (canCastle(king, false)) moves.add(new int[]{col - 2, row});
-            }
-        }
-        int originalRow = piece.getRow(), originalCol = piece.getCol();
-        Piece originalTarget;
-        for (int row = 0; row < 8; row++) {
-            for (int col = 0; col < 8; col++) {
-                if (!legalMove(piece, col, row) || isBlocked(piece, row, col)) continue;
-                originalTarget = board[row][col];
-                board[originalRow][originalCol] = null;
-                board[row][col] = piece;
-                piece.setRow(row);
-                piece.setCol(col);
-                boolean kingSafe = !isKingInCheck(piece.isWhite());
-                board[originalRow][originalCol] = piece;
-                board[row][col] = originalTarget;
-                piece.setRow(originalRow);
-                piece.setCol(originalCol);
-                if (kingSafe) moves.add(new int[]{col, row});
-            }
-        }
-        if (piece instanceof Pawn pawn) pawn.setMove(wasMoved);
-        else if (piece instanceof King king) king.setMove(wasMoved);
+        prepareMoveGenerator(piece.isWhite());
+        moveGenerator.addMoves(piece, moves);
         return moves;
     }
 
-    private boolean canCastle(King king, boolean kingSide) {
-        int row = king.getRow(), col = king.getCol();
-        int rookCol = kingSide ? 7 : 0;
-        if (!isOnBoard(row, rookCol)) return false;
-        Piece rook = board[row][rookCol];
-        if (!(rook instanceof Rook) || ((Rook) rook).isMoved()) return false;
-        int step = kingSide ? 1 : -1;
-        int clearTill = kingSide ? 7 : 0;
-        for (int c = col + step; kingSide ? c < clearTill : c > clearTill; c += step) {
-            if (!isOnBoard(row, c)) return false;
-            if (board[row][c] != null) return false;
-        }
-        for (int c = col; kingSide ? c <= col + 2 : c >= col - 2; c += step) {
-            if (!isOnBoard(row, c)) return false;
-            if (isSquareUnderAttack(row, c, !king.isWhite())) return false;
-        }
-        return true;
+    private void prepareMoveGenerator(boolean white) {
+        moveGenerator.prepare(white, white ? whiteKingRow : blackKingRow, white ? whiteKingCol : blackKingCol);
     }
 
     public List<ChessAI.Move> getAllLegalMoves(boolean isWhite) {
         List<ChessAI.Move> legalMoves = new ArrayList<>();
-        for (int row = 0; row < 8; row++) {
-            for (int col = 0; col < 8; col++) {
-                Piece piece = board[row][col];
-                if (piece != null && piece.isWhite() == isWhite) {
-                    for (int[] move : getValidMoves(piece)) {
-                        legalMoves.add(new ChessAI.Move(piece, move[1], move[0]));
-                    }
-                }
+        List<int[]> moves = new ArrayList<>();
+        prepareMoveGenerator(isWhite); // Checks and pins are found once for all the side's pieces
+        for (Piece piece : piecesOf(isWhite)) {
+            moves.clear();
+            moveGenerator.addMoves(piece, moves);
+            for (int[] move : moves) {
+                legalMoves.add(new ChessAI.Move(piece, move[1], move[0]));
             }
         }
         return legalMoves;
     }
 
+    /**
+     * In check with no legal move.
+     */
     public boolean isCheckmate(boolean white) {
         if (!isKingInCheck(white)) return false;
-        for (int row = 0; row < 8; row++) {
-            for (int col = 0; col < 8; col++) {
-                Piece piece = board[row][col];
-                if (piece != null && piece.isWhite() == white) {
-                    for (int[] move : getValidMoves(piece)) {
-                        Piece backup = board[move[1]][move[0]];
-                        int oldRow = piece.getRow(), oldCol = piece.getCol();
-                        board[oldRow][oldCol] = null;
-                        board[move[1]][move[0]] = piece;
-                        piece.setRow(move[1]);
-                        piece.setCol(move[0]);
-                        boolean stillInCheck = isKingInCheck(white);
-                        board[oldRow][oldCol] = piece;
-                        board[move[1]][move[0]] = backup;
-                        piece.setRow(oldRow);
-                        piece.setCol(oldCol);
-                        if (!stillInCheck) return false;
-                    }
-                }
-            }
+        List<int[]> moves = new ArrayList<>();
+        prepareMoveGenerator(white);
+        for (Piece piece : piecesOf(white)) {
+            moveGenerator.addMoves(piece, moves);
+            if (!moves.isEmpty()) return false;
         }
         return true;
     }
 
     public boolean isKingInCheck(boolean isWhitePlayer) {
-        int kingRow = -1, kingCol = -1;
-        for (int r = 0; r < 8 && kingRow == -1; r++) {
-            for (int c = 0; c < 8; c++) {
-                Piece piece = board[r][c];
-                if (piece instanceof King && piece.isWhite() == isWhitePlayer) {
-                    kingRow = r;
-                    kingCol = c;
-                    break;
-                }
-            }
-        }
+        int kingRow = isWhitePlayer ? whiteKingRow : blackKingRow;
+        int kingCol = isWhitePlayer ? whiteKingCol : blackKingCol;
         if (!isOnBoard(kingRow, kingCol)) return false;
-
-        for (int r = 0; r < 8; r++) {
-            for (int c = 0; c < 8; c++) {
-                Piece enemy = board[r][c];
-                if (enemy != null && enemy.isWhite() != isWhitePlayer) {
-                    if (enemy.logicMove(enemy.getRow(), enemy.getCol(), kingRow, kingCol, board)
-                            && enemy.getBlockPieces(this, kingRow, kingCol) == null) {
-                        return true;
-                    }
-                }
-            }
-        }
-        return false;
+        return Attacks.isSquareAttacked(board, kingRow, kingCol, !isWhitePlayer);
     }
 
-    public MoveSnapshot simulateMove(Piece piece, int toRow, int toCol) {
-        int fromRow = piece.getRow(), fromCol = piece.getCol();
-        if (!isOnBoard(fromRow, fromCol) || !isOnBoard(toRow, toCol)) {
-            return null;
-        }
-        Piece captured = board[toRow][toCol];
-        MoveSnapshot snapshot = new MoveSnapshot(piece, captured, fromRow, fromCol, toRow, toCol, false, false);
-        board[toRow][toCol] = piece;
-        board[fromRow][fromCol] = null;
-        piece.setRow(toRow);
-        piece.setCol(toCol);
-        return snapshot;
+    public boolean canUndo() {
+        return ply > 0;
     }
 
-    public void undoMove(MoveSnapshot snapshot) {
-        if (snapshot == null || snapshot.movedPiece == null) return;
-        int fromRow = snapshot.fromRow, fromCol = snapshot.fromCol;
-        int toRow = snapshot.toRow, toCol = snapshot.toCol;
-
-        if (!isOnBoard(fromRow, fromCol) || !isOnBoard(toRow, toCol)) return;
-
-        Piece movingPiece = snapshot.movedPiece, capturedPiece = snapshot.capturedPiece;
-
-        board[fromRow][fromCol] = movingPiece;
-        board[toRow][toCol] = capturedPiece;
-        movingPiece.setRow(fromRow);
-        movingPiece.setCol(fromCol);
-
-        if (movingPiece instanceof King) updateKingPosition((King) movingPiece, fromRow, fromCol);
-        if (capturedPiece != null) {
-            List<Piece> opponentPiece = snapshot.whiteTurnBeforeMove ? blackPieces : whitePieces;
-            opponentPiece.add(capturedPiece);
-        }
-
-        if (snapshot.movedPieceFirstMove) {
-            if (movingPiece instanceof Pawn pawn) pawn.setMove(false);
-            else if (movingPiece instanceof King king) king.setMove(false);
-            else if (movingPiece instanceof Rook rook) rook.setMove(false);
+    /**
+     * Takes back the last recorded move, restoring the pieces, their first-move flags, castling rights,
+     * the en passant square and the side to move exactly as they were.
+     */
+    public void undoMove() {
+        if (ply == 0) return;
+        MoveSnapshot record = undoStack[--ply];
+        Piece movingPiece = record.movedPiece;
+        int fromRow = record.fromRow, fromCol = record.fromCol;
+
+        if (movingPiece instanceof King && Math.abs(record.toCol - fromCol) == 2) undoCastling(fromRow, fromCol, record.toCol);
+        if (board[record.toRow][record.toCol] == movingPiece) {
+            relocate(movingPiece, record.toRow, record.toCol, fromRow, fromCol);
+        } else {
+            // A promoted piece stands on the destination; it leaves the board and the pawn comes back
+            setSquare(record.toRow, record.toCol, null);
+            movingPiece.setRow(fromRow);
+            movingPiece.setCol(fromCol);
+            setSquare(fromRow, fromCol, movingPiece);
         }
+        if (record.capturedPiece != null) setSquare(record.capturedRow, record.capturedCol, record.capturedPiece);
+        boolean moved = !record.movedPieceFirstMove;
+        if (movingPiece instanceof Pawn pawn) pawn.setMove(moved);
+        else if (movingPiece instanceof King king) king.setMove(moved);
+        else if (movingPiece instanceof Rook rook) rook.setMove(moved);
 
-        if (movingPiece instanceof King && Math.abs(toCol - fromCol) == 2) undoCastling(fromRow, fromCol, toRow);
+        position.setCastlingRights(record.castlingRights);
+        position.setEnPassantSquare(record.enPassantSquare);
+        setWhiteTurn(record.whiteTurnBeforeMove);
     }
 
     private void undoCastling(int row, int kingFromCol, int kingToCol) {
@@ -482,12 +560,8 @@ public class Board {
         if (!isOnBoard(row, rookFromCol) || !isOnBoard(row, rookToCol)) return;
         Piece rook = board[row][rookToCol];
         if (rook instanceof Rook) {
-            board[row][rookToCol] = null;
-            board[row][rookFromCol] = rook;
-            rook.setCol(rookFromCol);
+            relocate(rook, row, rookToCol, row, rookFromCol);
             ((Rook) rook).setMove(false);
-            if (rook.isWhite()) whitePieces.add(rook);
-            else blackPieces.add(rook);
         }
     }
 
@@ -502,22 +576,6 @@ public class Board {
         }
     }
 
-    private boolean isSquareUnderAttack(int row, int col, boolean byWhite) {
-        if (!isOnBoard(row, col)) return false;
-        for (int r = 0; r < 8; r++) {
-            for (int c = 0; c < 8; c++) {
-                Piece piece = board[r][c];
-                if (piece != null && piece.isWhite() == byWhite) {
-                    if (piece.logicMove(piece.getRow(), piece.getCol(), row, col, board)
-                            && !isBlocked(piece, row, col)) {
-                        return true;
-                    }
-                }
-            }
-        }
-        return false;
-    }
-
     public Piece getPieceAt(int row, int col) {
         if (!isOnBoard(row, col)) return null;
         return board[row][col];
@@ -526,11 +584,15 @@ public class Board {
     public void setSelectedPiece(Piece piece) { this.selectedPiece = piece; }
     public List<int[]> getValidMoves() { return validMoves; }
     public boolean isWhiteTurn() { return whiteTurn; }
-    public void setWhiteTurn(boolean whiteTurn) { this.whiteTurn = whiteTurn; }
+    public void setWhiteTurn(boolean whiteTurn) {
+        this.whiteTurn = whiteTurn;
+        position.setSideToMove(whiteTurn ? Position.WHITE : Position.BLACK);
+    }
     public boolean isAITurn() { return isAIEnabled && !whiteTurn && ai != null; }
     public ChessController getChessController() { return chessController; }
     public boolean isGameEnded() { return chessController != null && chessController.isGameEnded(); }
     public Piece[][] getBoard() { return board; }
+    public Position getPosition() { return position; }
 
     public void draw(AnchorPane boardGame) {
         boardGame.getChildren().clear();
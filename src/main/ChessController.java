@@ -1,5 +1,6 @@
 package main;
 
+import ai.SearchStats;
 import chessPieces.*;
 import javafx.animation.FadeTransition;
 import javafx.animation.Timeline;
@@ -7,6 +8,7 @@ import javafx.fxml.FXML;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.AnchorPane;
+import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.Rectangle;
 import javafx.scene.text.Text;
@@ -15,7 +17,6 @@ import javafx.scene.input.MouseEvent;
 import javafx.scene.Scene;
 import javafx.scene.Node;
 import utilz.LoadImage;
-import utilz.MoveSnapshot;
 
 import java.util.Arrays;
 import java.util.List;
@@ -41,6 +42,10 @@ public class ChessController {
     @FXML
     private AnchorPane promotionChess;
 
+    // Optional engine statistics panel, see showSearchStats()
+    private static final boolean SHOW_SEARCH_STATS = Boolean.getBoolean("chess.searchStats");
+    private Text searchStats;
+
     private Board board;
     private int selectedTimeSeconds = 600;
     private Timeline blackTimer, whiteTimer;
@@ -51,7 +56,6 @@ public class ChessController {
     private double dragOffsetX, dragOffsetY;
     private boolean isAIEnabled = false;
     private boolean isPlayerInputEnable = true;
-    private final Stack<MoveSnapshot> moveHistory = new Stack<>();
     private final Stack<Integer> blackTimeHistory = new Stack<>();
     private final Stack<Integer> whiteTimeHistory = new Stack<>();
 
@@ -155,7 +159,7 @@ public class ChessController {
 
         if (newPiece != null) {
             // Replace the pawn with the new piece
-            board.getBoard()[promotionRow][promotionCol] = newPiece;
+            board.placePiece(promotionRow, promotionCol, newPiece);
 
             // Hide the promotion dialog
             promotionChess.setVisible(false);
@@ -179,8 +183,10 @@ public class ChessController {
 
 
 
-    public void addMoveSnapshot(MoveSnapshot snapshot) {
-        moveHistory.push(snapshot);
+    /**
+     * Called by the board for every move it records, so that undo can give back the clocks as they were.
+     */
+    public void onMoveRecorded() {
         blackTimeHistory.push(blackTimeSeconds);
         whiteTimeHistory.push(whiteTimeSeconds);
         if (undo != null) undo.setDisable(false);
@@ -194,25 +200,24 @@ public class ChessController {
     }
 
     private void handleUndo() {
-        if (gameEnded || moveHistory.isEmpty()) return;
+        if (gameEnded || !board.canUndo() || board.isAITurn()) return; // Not while the bot is searching this position
 
         stopTimers();
         undoSingleMove();
-        if (board.isAITurn() && !moveHistory.isEmpty()) undoSingleMove();
+        // Against the bot, take its reply back as well so that the player is to move again
+        if (board.isAITurn() && board.canUndo()) undoSingleMove();
 
-        board.setWhiteTurn(moveHistory.isEmpty() || moveHistory.peek().isWhiteTurnBeforeMove());
         isPlayerInputEnable = true;
         updateTimerDisplay();
         redraw();
-        if (undo != null) undo.setDisable(moveHistory.isEmpty());
+        if (undo != null) undo.setDisable(!board.canUndo());
 
         if (board.isCheckmate(board.isWhiteTurn())) handleCheckmate(!board.isWhiteTurn());
     }
 
     private void undoSingleMove() {
-        if (moveHistory.isEmpty() || blackTimeHistory.isEmpty() || whiteTimeHistory.isEmpty()) return;
-        MoveSnapshot snapshot = moveHistory.pop();
-        board.undoMove(snapshot);
+        if (!board.canUndo() || blackTimeHistory.isEmpty() || whiteTimeHistory.isEmpty()) return;
+        board.undoMove();
         blackTimeSeconds = blackTimeHistory.pop();
         whiteTimeSeconds = whiteTimeHistory.pop();
     }
@@ -224,6 +229,31 @@ public class ChessController {
         if (botThinking != null) botThinking.setVisible(show);
     }
 
+    /**
+     * Shows the bot's last search statistics under the botThinking text, or at the bottom of the status
+     * panel when there is none. Only enabled with -Dchess.searchStats=true.
+     */
+    public void showSearchStats(SearchStats stats) {
+        if (!SHOW_SEARCH_STATS || stats == null) return;
+        if (searchStats == null) {
+            searchStats = new Text();
+            searchStats.setId("searchStats");
+            Node botThinking = boardGameChess.getScene() != null ? boardGameChess.getScene().lookup("#botThinking") : null;
+            if (botThinking != null && botThinking.getParent() instanceof Pane parent) {
+                searchStats.setLayoutX(botThinking.getLayoutX());
+                searchStats.setLayoutY(botThinking.getLayoutY() + 20);
+                parent.getChildren().add(searchStats);
+            } else if (gameStatusPage != null) {
+                searchStats.setLayoutX(16);
+                searchStats.setLayoutY(665);
+                gameStatusPage.getChildren().add(searchStats);
+            }
+        }
+        searchStats.setText(String.format("Depth %d  Nodes %,d  Quiescence %,d%nTT hits %.0f%%  First-move cutoffs %.0f%%  EBF %.2f",
+                stats.depth(), stats.nodes(), stats.qnodes(), 100 * stats.ttHitRate(),
+                100 * stats.firstMoveCutoffRate(), stats.effectiveBranchingFactor()));
+    }
+
     public void redraw() {
         board.draw(boardGameChess);
         if (!gameEnded) {
@@ -427,6 +457,7 @@ public class ChessController {
 
     private void endGame(boolean whiteWins, String message) {
         stopTimers();
+        board.stopPondering();
         gameEnded = true;
         boolean isPlayingWithBot = botName.isVisible();
         String winnerName = whiteWins ? player1Name.getText() : (isPlayingWithBot ? botName.getText() : player2Name.getText());
@@ -475,7 +506,8 @@ public class ChessController {
         notificationWinPage.setVisible(false);
         notificationWinPage.setLayoutX(260);
         notificationWinPage.setLayoutY(100);
-        moveHistory.clear();
+        blackTimeHistory.clear();
+        whiteTimeHistory.clear();
         if (undo != null) undo.setDisable(true);
         gameEnded = false;
         board.draw(boardGameChess);
@@ -506,6 +538,8 @@ public class ChessController {
 
     public int getSelectedTimeSeconds() { return selectedTimeSeconds; }
 
+    public int getTimeSeconds(boolean white) { return white ? whiteTimeSeconds : blackTimeSeconds; }
+
     private boolean isChildOf(Node node, Node parent) {
         while (node != null) {
             if (node == parent) return true;
@@ -89,6 +89,7 @@ public class Game extends Application {
       }
       // Get the selected time from ChessController
       this.selectedTimeSeconds = chessController.getSelectedTimeSeconds();
+      board.stopPondering(); // The game being left is over
       Stage stage = (Stage) chessScene.getWindow();
       if (stage == null) {
          throw new IllegalStateException("Cannot retrieve Stage from chessScene");
@@ -97,6 +98,12 @@ public class Game extends Application {
       stage.centerOnScreen();
    }
 
+   @Override
+   public void stop() {
+      // Cancels a search still running on the bot's threads when the window closes
+      board.shutdown();
+   }
+
    // Getter for ChessController
    public ChessController getChessController() {
       return chessController;
@@ -0,0 +1,186 @@
+package main;
+
+import chessPieces.*;
+import utilz.Attacks;
+
+import java.util.List;
+
+/**
+ * Legal moves on the UI board. Targets are produced only along each piece's own pattern, from the tables in
+ * Attacks, and filtered with the check and pin masks of the side to move, so no move is played to find out
+ * whether it leaves the king in check. Masks are longs with bit row * 8 + col set for each square.
+ * <p>
+ * prepare() computes the masks for one side; addMoves() can then be called for any number of its pieces.
+ * The rules are Board's: castling as in canCastle, and no en passant for the player.
+ */
+final class LegalMoveGenerator {
+    private static final long ALL_SQUARES = -1L;
+
+    private final Piece[][] board;
+    private final long[] pinRays = new long[64]; // For a pinned piece, the squares between king and pinner inclusive
+
+    private boolean white;
+    private int kingRow, kingCol;
+    private int checkers;
+    private long checkMask; // Squares a non-king move must land on: capturing the checker or blocking it
+    private long pinned;
+
+    LegalMoveGenerator(Piece[][] board) {
+        this.board = board;
+    }
+
+    /**
+     * Finds the checkers and pinned pieces of the side whose king stands on the square (-1 if it has none).
+     */
+    void prepare(boolean white, int kingRow, int kingCol) {
+        this.white = white;
+        this.kingRow = kingRow;
+        this.kingCol = kingCol;
+        checkers = 0;
+        checkMask = 0;
+        pinned = 0;
+        if (kingRow < 0) {
+            checkMask = ALL_SQUARES;
+            return;
+        }
+        int kingSq = kingRow * 8 + kingCol;
+
+        // Enemy pawns attack towards our side, so they stand one row nearer the enemy's back rank
+        int pawnRow = white ? kingRow - 1 : kingRow + 1;
+        if (pawnRow >= 0 && pawnRow < 8) {
+            for (int col = kingCol - 1; col <= kingCol + 1; col += 2) {
+                if (col >= 0 && col < 8 && isEnemy(board[pawnRow][col], Pawn.class)) addChecker(1L << (pawnRow * 8 + col));
+            }
+        }
+        for (int target : Attacks.KNIGHT_TARGETS[kingSq]) {
+            if (isEnemy(board[target >> 3][target & 7], Knight.class)) addChecker(1L << target);
+        }
+
+        int[][] rays = Attacks.RAYS[kingSq];
+        for (int dir = 0; dir < 8; dir++) {
+            long ray = 0;
+            int shield = -1; // Our piece nearest the king on this ray, pinned if an enemy slider stands behind it
+            for (int target : rays[dir]) {
+                ray |= 1L << target;
+                Piece piece = board[target >> 3][target & 7];
+                if (piece == null) continue;
+                if (piece.isWhite() == white) {
+                    if (shield >= 0) break;
+                    shield = target;
+                    continue;
+                }
+                if (slidesAlong(piece, dir)) {
+                    if (shield < 0) {
+                        addChecker(ray);
+                    } else {
+                        pinned |= 1L << shield;
+                        pinRays[shield] = ray;
+                    }
+                }
+                break;
+            }
+        }
+        if (checkers == 0) checkMask = ALL_SQUARES;
+    }
+
+    /**
+     * Adds the legal destinations of one piece of the prepared side as {col, row} pairs.
+     */
+    void addMoves(Piece piece, List<int[]> moves) {
+        int row = piece.getRow(), col = piece.getCol();
+        int sq = row * 8 + col;
+        if (piece instanceof King king) {
+            addKingMoves(king, sq, moves);
+            return;
+        }
+        if (checkers > 1) return; // Only the king can answer a double check
+
+        long allowed = checkMask;
+        if ((pinned & (1L << sq)) != 0) allowed &= pinRays[sq];
+        if (allowed == 0) return;
+
+        if (piece instanceof Pawn) {
+            addPawnMoves(row, col, allowed, moves);
+        } else if (piece instanceof Knight) {
+            for (int target : Attacks.KNIGHT_TARGETS[sq]) addIfAllowed(target, allowed, moves);
+        } else {
+            int firstDir = piece instanceof Bishop ? Attacks.FIRST_DIAGONAL : 0;
+            int lastDir = piece instanceof Rook ? Attacks.FIRST_DIAGONAL : 8;
+            int[][] rays = Attacks.RAYS[sq];
+            for (int dir = firstDir; dir < lastDir; dir++) {
+                for (int target : rays[dir]) {
+                    addIfAllowed(target, allowed, moves);
+                    if (board[target >> 3][target & 7] != null) break;
+                }
+            }
+        }
+    }
+
+    private void addPawnMoves(int row, int col, long allowed, List<int[]> moves) {
+        int direction = white ? -1 : 1;
+        int startRow = white ? 6 : 1;
+        int next = row + direction;
+        if (next < 0 || next > 7) return;
+        if (board[next][col] == null) {
+            addIfAllowed(next * 8 + col, allowed, moves);
+            int jump = next + direction;
+            if (row == startRow && board[jump][col] == null) addIfAllowed(jump * 8 + col, allowed, moves);
+        }
+        for (int target = col - 1; target <= col + 1; target += 2) {
+            if (target < 0 || target > 7) continue;
+            Piece victim = board[next][target];
+            if (victim != null && victim.isWhite() != white) addIfAllowed(next * 8 + target, allowed, moves);
+        }
+    }
+
+    private void addKingMoves(King king, int sq, List<int[]> moves) {
+        // The king is lifted off the board for the attack test, so that a slider checking it along a line
+        // also covers the square behind it
+        board[kingRow][kingCol] = null;
+        for (int target : Attacks.KING_TARGETS[sq]) {
+            Piece occupant = board[target >> 3][target & 7];
+            if (occupant != null && occupant.isWhite() == white) continue;
+            if (!Attacks.isSquareAttacked(board, target >> 3, target & 7, !white)) moves.add(new int[]{target & 7, target >> 3});
+        }
+        board[kingRow][kingCol] = king;
+
+        if (checkers == 0 && !king.isMoved()) {
+            if (canCastle(true)) moves.add(new int[]{kingCol + 2, kingRow});
+            if (canCastle(false)) moves.add(new int[]{kingCol - 2, kingRow});
+        }
+    }
+
+    // The unmoved king and rook, the squares between them empty and the king's path not attacked
+    private boolean canCastle(boolean kingSide) {
+        int rookCol = kingSide ? 7 : 0;
+        Piece rook = board[kingRow][rookCol];
+        if (!(rook instanceof Rook) || rook.isWhite() != white || ((Rook) rook).isMoved()) return false;
+        int step = kingSide ? 1 : -1;
+        for (int col = kingCol + step; col != rookCol; col += step) {
+            if (board[kingRow][col] != null) return false;
+        }
+        for (int col = kingCol + step; col != kingCol + 3 * step; col += step) {
+            if (Attacks.isSquareAttacked(board, kingRow, col, !white)) return false;
+        }
+        return true;
+    }
+
+    private void addIfAllowed(int target, long allowed, List<int[]> moves) {
+        if ((allowed & (1L << target)) == 0) return;
+        Piece occupant = board[target >> 3][target & 7];
+        if (occupant == null || occupant.isWhite() != white) moves.add(new int[]{target & 7, target >> 3});
+    }
+
+    private void addChecker(long mask) {
+        checkers++;
+        checkMask |= mask;
+    }
+
+    private boolean isEnemy(Piece piece, Class<? extends Piece> type) {
+        return piece != null && piece.isWhite() != white && type.isInstance(piece);
+    }
+
+    private static boolean slidesAlong(Piece piece, int dir) {
+        return piece instanceof Queen || (dir < Attacks.FIRST_DIAGONAL ? piece instanceof Rook : piece instanceof Bishop);
+    }
+}
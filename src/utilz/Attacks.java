@@ -0,0 +1,119 @@
+package utilz;
+
+import chessPieces.*;
+
+import java.util.Arrays;
+
+/**
+ * Square geometry of the UI board, computed once at class load, and the attack test built on it.
+ * Squares are indexed row * 8 + col, as in ai.Position, so square 0 is a8. The pieces take their move
+ * geometry only from here and look at the board's own squares; ai.Bitboards serves the engine alone.
+ */
+public final class Attacks {
+    // Directions as row and column steps: the four straight ones first, then the four diagonals
+    public static final int[] DIRECTION_ROW = {-1, 1, 0, 0, -1, -1, 1, 1};
+    public static final int[] DIRECTION_COL = {0, 0, -1, 1, -1, 1, -1, 1};
+    public static final int FIRST_DIAGONAL = 4;
+
+    public static final int[][] KNIGHT_TARGETS = new int[64][];
+    public static final int[][] KING_TARGETS = new int[64][];
+    // [square] the same targets as bit masks over row * 8 + col, for testing a single move
+    public static final long[] KNIGHT_MASKS = new long[64];
+    public static final long[] KING_MASKS = new long[64];
+    // [square][direction] the squares along the ray to the edge of the board, nearest first
+    public static final int[][][] RAYS = new int[64][8][];
+    // [from][to] the direction leading from one square to the other, -1 if they share no rank, file or diagonal
+    public static final int[][] DIRECTION = new int[64][64];
+    // [from][to] the squares strictly between the two as a mask, 0 if they share no rank, file or diagonal
+    public static final long[][] BETWEEN = new long[64][64];
+    // [square] the square as a {row, col} pair, shared and never to be written
+    public static final int[][] SQUARES = new int[64][];
+
+    private static final int[][] KNIGHT_STEPS = {{-2, -1}, {-2, 1}, {-1, -2}, {-1, 2}, {1, -2}, {1, 2}, {2, -1}, {2, 1}};
+    private static final int[][] KING_STEPS = {{-1, -1}, {-1, 0}, {-1, 1}, {0, -1}, {0, 1}, {1, -1}, {1, 0}, {1, 1}};
+
+    static {
+        for (int sq = 0; sq < 64; sq++) {
+            int row = sq >> 3, col = sq & 7;
+            KNIGHT_TARGETS[sq] = targets(row, col, KNIGHT_STEPS);
+            KING_TARGETS[sq] = targets(row, col, KING_STEPS);
+            KNIGHT_MASKS[sq] = mask(KNIGHT_TARGETS[sq]);
+            KING_MASKS[sq] = mask(KING_TARGETS[sq]);
+            SQUARES[sq] = new int[]{row, col};
+            Arrays.fill(DIRECTION[sq], -1);
+            for (int dir = 0; dir < 8; dir++) {
+                int length = 0;
+                int[] ray = new int[7];
+                long between = 0;
+                for (int r = row + DIRECTION_ROW[dir], c = col + DIRECTION_COL[dir]; isOnBoard(r, c);
+                     r += DIRECTION_ROW[dir], c += DIRECTION_COL[dir]) {
+                    ray[length++] = r * 8 + c;
+                    DIRECTION[sq][r * 8 + c] = dir;
+                    BETWEEN[sq][r * 8 + c] = between;
+                    between |= 1L << (r * 8 + c);
+                }
+                RAYS[sq][dir] = Arrays.copyOf(ray, length);
+            }
+        }
+    }
+
+    private Attacks() {
+    }
+
+    private static int[] targets(int row, int col, int[][] steps) {
+        int count = 0;
+        int[] squares = new int[steps.length];
+        for (int[] step : steps) {
+            int r = row + step[0], c = col + step[1];
+            if (isOnBoard(r, c)) squares[count++] = r * 8 + c;
+        }
+        return Arrays.copyOf(squares, count);
+    }
+
+    private static long mask(int[] squares) {
+        long mask = 0;
+        for (int sq : squares) mask |= 1L << sq;
+        return mask;
+    }
+
+    private static boolean isOnBoard(int row, int col) {
+        return row >= 0 && row < 8 && col >= 0 && col < 8;
+    }
+
+    /**
+     * Whether a piece of the given color attacks the square. Only the two pawn squares, the knight and king
+     * targets and the first piece along each of the eight rays are looked at, instead of every piece on the board.
+     */
+    public static boolean isSquareAttacked(Piece[][] board, int row, int col, boolean byWhite) {
+        // A white pawn attacks towards row 0, so it stands one row below the square
+        int pawnRow = byWhite ? row + 1 : row - 1;
+        if (pawnRow >= 0 && pawnRow < 8) {
+            if (col > 0 && isPiece(board[pawnRow][col - 1], Pawn.class, byWhite)) return true;
+            if (col < 7 && isPiece(board[pawnRow][col + 1], Pawn.class, byWhite)) return true;
+        }
+        int sq = row * 8 + col;
+        for (int target : KNIGHT_TARGETS[sq]) {
+            if (isPiece(board[target >> 3][target & 7], Knight.class, byWhite)) return true;
+        }
+        for (int target : KING_TARGETS[sq]) {
+            if (isPiece(board[target >> 3][target & 7], King.class, byWhite)) return true;
+        }
+        int[][] rays = RAYS[sq];
+        for (int dir = 0; dir < 8; dir++) {
+            for (int target : rays[dir]) {
+                Piece piece = board[target >> 3][target & 7];
+                if (piece == null) continue;
+                if (piece.isWhite() == byWhite && (piece instanceof Queen
+                        || (dir < FIRST_DIAGONAL ? piece instanceof Rook : piece instanceof Bishop))) {
+                    return true;
+                }
+                break; // The first piece on the ray blocks everything behind it
+            }
+        }
+        return false;
+    }
+
+    private static boolean isPiece(Piece piece, Class<? extends Piece> type, boolean white) {
+        return piece != null && piece.isWhite() == white && type.isInstance(piece);
+    }
+}
@@ -19,6 +19,18 @@ public class LoadImage {
     public static String k = "k.png";
     public static String p = "p.png";
 
+    private static final String PIECE_TYPES = "pnbrqk";
+    // [white ? 0 : 1][index in PIECE_TYPES] the twelve piece images, decoded once
+    private static final Image[][] PIECE_IMAGES = new Image[2][PIECE_TYPES.length()];
+
+    static {
+        for (int type = 0; type < PIECE_TYPES.length(); type++) {
+            String p = String.valueOf(PIECE_TYPES.charAt(type));
+            PIECE_IMAGES[0][type] = readPieceImage(true, p);
+            PIECE_IMAGES[1][type] = readPieceImage(false, p);
+        }
+    }
+
 
 
     public static BufferedImage GetAtlas(String fileName) {
@@ -39,7 +51,16 @@ public class LoadImage {
         return img;
     }
 
+    /**
+     * The shared image of a piece, p as in getFileName. Pieces created on restart or promotion only take a
+     * reference to one of the images decoded at class load, so no file is read and no bitmap is decoded twice.
+     * The image is shared by every piece of its kind and must not be drawn into.
+     */
     public static Image GetPieceImage(boolean isWhite , String p) {
+        return PIECE_IMAGES[isWhite ? 0 : 1][PIECE_TYPES.indexOf(p)];
+    }
+
+    private static Image readPieceImage(boolean isWhite , String p) {
         BufferedImage img = null;
         InputStream is = LoadImage.class.getResourceAsStream("/res/" + getFileName( isWhite , p)+".png");
         try {
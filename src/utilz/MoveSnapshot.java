@@ -1,31 +1,53 @@
 package utilz;
 import chessPieces.Piece;
 
+/**
+ * One record of Board's undo stack: everything needed to take a move back exactly.
+ * Board preallocates its records and refills them with set(), so recording a move allocates nothing;
+ * a record handed out by Board stays valid only until its move is undone.
+ */
 public class MoveSnapshot {
     public Piece movedPiece;
     public Piece capturedPiece;
     public int fromRow, fromCol, toRow, toCol;
+    public int capturedRow, capturedCol; // Differs from the destination for en passant
     public boolean whiteTurnBeforeMove;
 
-    // Optional first-move flags (use if you implement castling or pawn promotion logic)
+    // Whether the moving king, rook or pawn had not moved before, so that undo gives back its first-move options
     public boolean movedPieceFirstMove;
     public boolean capturedPieceFirstMove;
     public int castlingRookFromCol;   // Original column of rook in castling
     public int castlingRookToCol;
 
-    public MoveSnapshot(Piece movedPiece, Piece capturedPiece,
-                        int fromRow, int fromCol, int toRow, int toCol, boolean whiteTurnBeforeMove, boolean movedPieceFirstMove) {
+    // Position state the move overwrites
+    public int castlingRights;
+    public int enPassantSquare;
+
+    public MoveSnapshot() {
+        castlingRookFromCol = castlingRookToCol = -1;
+        enPassantSquare = -1;
+    }
+
+    /**
+     * Refills the record for a new move, with the capture on the destination square and no castling.
+     */
+    public void set(Piece movedPiece, Piece capturedPiece,
+                    int fromRow, int fromCol, int toRow, int toCol, boolean whiteTurnBeforeMove, boolean movedPieceFirstMove) {
         this.movedPiece = movedPiece;
         this.capturedPiece = capturedPiece;
         this.fromRow = fromRow;
         this.fromCol = fromCol;
         this.toRow = toRow;
         this.toCol = toCol;
+        this.capturedRow = toRow;
+        this.capturedCol = toCol;
         this.whiteTurnBeforeMove = whiteTurnBeforeMove;
         this.movedPieceFirstMove = movedPieceFirstMove;
         this.capturedPieceFirstMove = false; // Set if needed for en passant or other case
         this.castlingRookFromCol = -1;
         this.castlingRookToCol = -1;
+        this.castlingRights = 0;
+        this.enPassantSquare = -1;
     }
 
     public boolean isWhiteTurnBeforeMove() {
@@ -36,5 +58,14 @@ public class MoveSnapshot {
         this.castlingRookFromCol = fromCol;
         this.castlingRookToCol = toCol;
     }
-}
 
+    public void setCapturedSquare(int row, int col) {
+        this.capturedRow = row;
+        this.capturedCol = col;
+    }
+
+    public void setPositionState(int castlingRights, int enPassantSquare) {
+        this.castlingRights = castlingRights;
+        this.enPassantSquare = enPassantSquare;
+    }
+}